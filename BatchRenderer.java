@@ -0,0 +1,395 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * renders many fractals to PNG files at once, for galleries of thumbnails. Scenes are read one
+ * line at a time from a CSV or JSON-lines file (see BatchScene) and rendered on a work-stealing
+ * pool. Each thread borrows a worker holding its own generator, image and renderer, so after the
+ * first few scenes rendering allocates almost nothing, and only a bounded number of scenes is
+ * read ahead of the workers, so memory stays flat however long the file is. The time each scene
+ * spent generating, rendering and writing is written to a CSV report.
+ *
+ * <pre>
+ * java BatchRenderer --in scenes.csv --out-dir thumbs [--size 200x160] [--threads 8]
+ *     [--report thumbs/report.csv]
+ * </pre>
+ * A scene file of "-" is read from standard input.
+ *
+ * @author Gwen Tait
+ * @version 10-17-26
+ */
+public class BatchRenderer {
+    /**
+     * the size of a thumbnail unless --size is given
+     */
+    public static final String DEFAULT_SIZE = "200x160";
+
+    /**
+     * the number of scenes read ahead for each thread
+     */
+    private static final int SCENES_PER_THREAD = 2;
+
+    /**
+     * the number of scene times kept for the percentiles in the summary
+     */
+    private static final int TIMING_WINDOW = 1 << 16;
+
+    /**
+     * the shortest branch worth generating, in pixels
+     */
+    private static final double MIN_BRANCH_LENGTH = 1;
+
+    /**
+     * the heading of the report
+     */
+    private static final String REPORT_HEADER =
+            "index,name,branches,generate_ms,render_ms,write_ms,total_ms,error";
+
+    /**
+     * the pool the scenes are rendered on
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * the workers not currently rendering a scene, one per thread
+     */
+    private final BlockingQueue<Worker> workers;
+
+    /**
+     * the scenes that may be read but not yet finished, which keeps the read-ahead bounded
+     */
+    private final Semaphore inFlight;
+
+    /**
+     * the size of the images in pixels
+     */
+    private final int width, height;
+
+    /**
+     * the directory the images are written to
+     */
+    private final Path outDir;
+
+    /**
+     * the time each finished scene took from start to end, in nanoseconds
+     */
+    private final SlidingHistogram sceneNanos = new SlidingHistogram(TIMING_WINDOW);
+
+    /**
+     * the number of scenes rendered and written
+     */
+    private final AtomicLong rendered = new AtomicLong();
+
+    /**
+     * the number of scenes which could not be read, rendered or written
+     */
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * the total number of branches drawn
+     */
+    private final AtomicLong branches = new AtomicLong();
+
+    /**
+     * constructs a batch renderer
+     * @param threads   the number of scenes to render at once, must be at least 1
+     * @param width     the width of the images in pixels, must be at least 1
+     * @param height    the height of the images in pixels, must be at least 1
+     * @param outDir    the directory to write the images to
+     */
+    public BatchRenderer(int threads, int width, int height, Path outDir){
+        if (threads < 1){
+            throw new IllegalArgumentException("Thread count must be at least 1");
+        }
+        if (width < 1 || height < 1){
+            throw new IllegalArgumentException("Image size must be positive");
+        }
+        this.pool = new ForkJoinPool(threads);
+        this.workers = new ArrayBlockingQueue<>(threads);
+        this.inFlight = new Semaphore(threads * SCENES_PER_THREAD);
+        this.width = width;
+        this.height = height;
+        this.outDir = outDir;
+        for (int i = 0; i < threads; i++) {
+            workers.add(new Worker());
+        }
+    }
+
+    /**
+     * main method for batch rendering. Parses the options, renders every scene in the scene
+     * file and prints a summary
+     * @param args  the command line options, see the class comment
+     */
+    public static void main(String[] args){
+        System.setProperty("java.awt.headless", "true");
+        Map<String, String> opts;
+        int[] size;
+        int threads;
+        try {
+            opts = HeadlessRenderer.parseArgs(args);
+            require(opts, "in");
+            require(opts, "out-dir");
+            size = HeadlessRenderer.parseSize(opts.getOrDefault("size", DEFAULT_SIZE));
+            threads = Integer.parseInt(opts.getOrDefault("threads",
+                    "" + Runtime.getRuntime().availableProcessors()));
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("usage: java BatchRenderer --in SCENES --out-dir DIR [--size "
+                    + DEFAULT_SIZE + "] [--threads N] [--report FILE.csv]");
+            System.exit(2);
+            return;
+        }
+
+        Path outDir = Path.of(opts.get("out-dir"));
+        Path report = opts.containsKey("report") ? Path.of(require(opts, "report"))
+                : outDir.resolve("report.csv");
+        String in = opts.get("in");
+        BatchRenderer batch = new BatchRenderer(threads, size[0], size[1], outDir);
+        long start = System.nanoTime();
+        try {
+            Files.createDirectories(outDir);
+            try (BufferedReader scenes = in.equals("-")
+                    ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                    : Files.newBufferedReader(Path.of(in));
+                 Writer out = Files.newBufferedWriter(report)) {
+                batch.render(scenes, out);
+            }
+        } catch (IOException e) {
+            System.err.println("Batch failed: " + e.getMessage());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            System.err.println("Batch interrupted");
+            System.exit(1);
+        }
+        System.out.println(batch.summary(System.nanoTime() - start));
+        System.out.println("Report written to " + report);
+    }
+
+    /**
+     * renders every scene in a scene file, returning once all of them are written. Blank lines
+     * and lines starting with # are skipped, and a CSV header line sets the column order for the
+     * lines after it. A scene which can not be parsed or rendered is reported and skipped.
+     * The pool is shut down once the file is finished, so a batch renderer renders one file
+     * @param scenes    the scene file
+     * @param report    where to write the CSV report, one line per scene in the order they finish
+     * @throws IOException if the scene file can not be read
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    public void render(BufferedReader scenes, Writer report) throws IOException, InterruptedException {
+        PrintWriter out = new PrintWriter(report);
+        out.println(REPORT_HEADER);
+        String[] header = null;
+        long index = 0;
+        String line;
+        while ((line = scenes.readLine()) != null) {
+            line = line.strip();
+            if (line.isEmpty() || line.startsWith("#")){
+                continue;
+            }
+            if (!line.startsWith("{") && BatchScene.isHeader(line)){
+                header = BatchScene.parseHeader(line);
+                continue;
+            }
+            BatchScene scene;
+            try {
+                scene = BatchScene.parse(index, line, header);
+            } catch (IllegalArgumentException e) {
+                failed.incrementAndGet();
+                report(out, index++, "", 0, 0, 0, 0, 0, e.getMessage());
+                continue;
+            }
+            index++;
+            inFlight.acquire();
+            pool.execute(() -> {
+                try {
+                    render(scene, out);
+                } finally {
+                    inFlight.release();
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        out.flush();
+    }
+
+    /**
+     * gets a summary of the scenes rendered so far
+     * @param wallNanos     the time the whole batch took, in nanoseconds
+     * @return              the summary
+     */
+    public String summary(long wallNanos){
+        double seconds = wallNanos / 1e9;
+        return String.format("%,d scenes rendered, %,d failed in %.2f s (%.1f scenes/s)  "
+                        + "scene %.1f/%.1f ms p50/p99  %,d branches",
+                rendered.get(), failed.get(), seconds, rendered.get() / Math.max(seconds, 1e-9),
+                sceneNanos.percentile(50) / 1e6, sceneNanos.percentile(99) / 1e6, branches.get());
+    }
+
+    /**
+     * renders one scene with a borrowed worker and reports its times
+     * @param scene     the scene to render
+     * @param out       the report
+     */
+    private void render(BatchScene scene, PrintWriter out){
+        Worker worker = workers.remove();
+        long start = System.nanoTime();
+        try {
+            Path file = outDir.resolve(scene.name() + ".png");
+            long generated = worker.generate(scene.options());
+            long drawn = worker.draw();
+            long written = worker.write(file);
+            int count = worker.branchCount();
+            rendered.incrementAndGet();
+            branches.addAndGet(count);
+            sceneNanos.record(written - start);
+            report(out, scene.index(), scene.name(), count, generated - start, drawn - generated,
+                    written - drawn, written - start, "");
+        } catch (IOException | RuntimeException e) {
+            failed.incrementAndGet();
+            report(out, scene.index(), scene.name(), 0, 0, 0, 0, System.nanoTime() - start,
+                    String.valueOf(e.getMessage()));
+        } finally {
+            workers.add(worker);
+        }
+    }
+
+    /**
+     * writes one line of the report
+     * @param out           the report
+     * @param index         the position of the scene in the batch
+     * @param name          the name of the scene
+     * @param count         the number of branches drawn
+     * @param generateNanos the time spent generating
+     * @param renderNanos   the time spent drawing
+     * @param writeNanos    the time spent writing the image
+     * @param totalNanos    the time the whole scene took
+     * @param error         why the scene failed, or an empty string
+     */
+    private static void report(PrintWriter out, long index, String name, int count, long generateNanos,
+                               long renderNanos, long writeNanos, long totalNanos, String error){
+        String line = String.format("%d,%s,%d,%.3f,%.3f,%.3f,%.3f,%s", index, name, count,
+                generateNanos / 1e6, renderNanos / 1e6, writeNanos / 1e6, totalNanos / 1e6,
+                error.replace(',', ';'));
+        synchronized (out) {
+            out.println(line);
+        }
+    }
+
+    /**
+     * gets a required option
+     * @param opts  the parsed options
+     * @param name  the name of the option
+     * @return      the value of the option
+     */
+    private static String require(Map<String, String> opts, String name){
+        String value = opts.get(name);
+        if (value == null || value.isEmpty()){
+            throw new IllegalArgumentException("Missing --" + name);
+        }
+        return value;
+    }
+
+    /**
+     * private helper class for BatchRenderer holding everything needed to render one scene.
+     * A worker is only used by one thread at a time and is kept for the whole batch, so its
+     * generator's buffers, its image and its renderer's paths are reused from scene to scene
+     */
+    private class Worker {
+        /**
+         * the generator, which generates on the calling thread
+         */
+        private final FractalGenerator generator = new FractalGenerator();
+
+        /**
+         * the image each scene is drawn into
+         */
+        private final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+
+        /**
+         * the pixels of the image
+         */
+        private final int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+
+        /**
+         * the renderer each scene is drawn with
+         */
+        private final BatchedRenderer renderer = new BatchedRenderer();
+
+        /**
+         * constructs a worker whose generator fits the fractal to the image
+         */
+        Worker(){
+            generator.setCanvas(width, height);
+            generator.setViewport(new Rectangle(0, 0, width, height));
+            generator.setLevelOfDetail(MIN_BRANCH_LENGTH);
+        }
+
+        /**
+         * generates a scene
+         * @param options   the options to generate with
+         * @return          the time generation finished, from System.nanoTime()
+         */
+        long generate(FractalOptions options){
+            generator.setOptions(options.recDepth(), options.ratio(), options.lChAngle(),
+                    options.rChAngle(), options.trunkLength(), options.trunkWidth(),
+                    options.trunkColor(), options.leafColor());
+            return System.nanoTime();
+        }
+
+        /**
+         * draws the last generated scene into the image
+         * @return      the time drawing finished, from System.nanoTime()
+         */
+        long draw(){
+            Graphics2D g2d = image.createGraphics();
+            try {
+                g2d.setColor(Color.BLACK);
+                g2d.fillRect(0, 0, width, height);
+                renderer.draw(g2d, generator.getSnapshot());
+            } finally {
+                g2d.dispose();
+            }
+            return System.nanoTime();
+        }
+
+        /**
+         * writes the image to a PNG file
+         * @param file  the file to write
+         * @return      the time writing finished, from System.nanoTime()
+         * @throws IOException if the file can not be written
+         */
+        long write(Path file) throws IOException {
+            try (PngStreamWriter png = new PngStreamWriter(
+                    new BufferedOutputStream(Files.newOutputStream(file)), width, height)) {
+                png.writeRows(pixels, height);
+            }
+            return System.nanoTime();
+        }
+
+        /**
+         * gets the number of branches in the last generated scene
+         * @return  the number of branches
+         */
+        int branchCount(){
+            return generator.getSnapshot().branches().size();
+        }
+    }
+}
@@ -0,0 +1,224 @@
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * one fractal to render in a batch, read from a line of a CSV or JSON-lines scene file.
+ * CSV lines list the options in the order of COLUMNS, or in the order of a header line naming
+ * the columns. JSON lines are flat objects keyed by the same names, like
+ * {"depth": 14, "ratio": 65, "trunk-color": "#8B4513"}. Missing options use the GUI's defaults,
+ * and an optional "name" column names the image written for the scene. Names may only use
+ * letters, digits, '.', '_' and '-', so every image stays in the output directory.
+ * @author Gwen Tait
+ * @version 10-17-26
+ *
+ *
+ * @param index     the position of the scene in the batch, starting from 0
+ * @param name      the name of the image written for the scene, without the extension
+ * @param options   the options to generate the scene with
+ */
+public record BatchScene(long index, String name, FractalOptions options) {
+    /**
+     * the columns of a CSV line without a header, in order
+     */
+    public static final String[] COLUMNS = {"depth", "ratio", "left", "right", "length", "width",
+            "trunk-color", "leaf-color"};
+
+    /**
+     * parses one line of a scene file
+     * @param index     the position of the scene in the batch
+     * @param line      the line to parse, either a JSON object or comma separated values
+     * @param header    the column names of a CSV line, or null to use COLUMNS
+     * @return          the scene
+     */
+    public static BatchScene parse(long index, String line, String[] header){
+        Map<String, String> values = line.startsWith("{") ? parseJson(line)
+                : parseCsv(line, header == null ? COLUMNS : header);
+        String name = values.remove("name");
+        if (name == null || name.isEmpty()){
+            name = String.format("scene-%06d", index);
+        } else if (!name.matches("[A-Za-z0-9_-][A-Za-z0-9._-]*")){
+            throw new IllegalArgumentException("Invalid scene name: " + name);
+        }
+        for (String key : values.keySet()) {
+            if (!isColumn(key)){
+                throw new IllegalArgumentException("Unknown option: " + key);
+            }
+        }
+        return new BatchScene(index, name, HeadlessRenderer.parseOptions(values));
+    }
+
+    /**
+     * checks whether a CSV line is a header naming the columns rather than a scene
+     * @param line  the line to check
+     * @return      true if the first field is a column name
+     */
+    public static boolean isHeader(String line){
+        String first = line.split(",", -1)[0].trim();
+        return first.equals("name") || isColumn(first);
+    }
+
+    /**
+     * splits a CSV header into its column names
+     * @param line  the header line
+     * @return      the column names, in order
+     */
+    public static String[] parseHeader(String line){
+        String[] names = line.split(",", -1);
+        for (int i = 0; i < names.length; i++) {
+            names[i] = names[i].trim();
+            if (!names[i].equals("name") && !isColumn(names[i])){
+                throw new IllegalArgumentException("Unknown column: " + names[i]);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * checks whether the passed name is one of the option columns
+     * @param name  the name to check
+     * @return      true if it names an option
+     */
+    private static boolean isColumn(String name){
+        for (String column : COLUMNS) {
+            if (column.equals(name)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * reads the fields of a CSV line into a map by column name. Empty fields are left out so
+     * they take their default
+     * @param line      the line to parse
+     * @param columns   the name of each column
+     * @return          the values by column name
+     */
+    private static Map<String, String> parseCsv(String line, String[] columns){
+        String[] fields = line.split(",", -1);
+        if (fields.length > columns.length){
+            throw new IllegalArgumentException("Too many fields: " + line);
+        }
+        Map<String, String> values = new HashMap<>();
+        for (int i = 0; i < fields.length; i++) {
+            String field = fields[i].trim();
+            if (!field.isEmpty()){
+                values.put(columns[i], field);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * reads a flat JSON object of string, number and boolean values into a map
+     * @param line  the line to parse
+     * @return      the values by key, with strings unquoted and numbers as written
+     */
+    private static Map<String, String> parseJson(String line){
+        Map<String, String> values = new HashMap<>();
+        int[] pos = {1};
+        skipSpace(line, pos);
+        if (peek(line, pos) == '}'){
+            pos[0]++;
+        } else {
+            while (true) {
+                skipSpace(line, pos);
+                String key = readString(line, pos);
+                skipSpace(line, pos);
+                expect(line, pos, ':');
+                skipSpace(line, pos);
+                values.put(key, peek(line, pos) == '"' ? readString(line, pos) : readBare(line, pos));
+                skipSpace(line, pos);
+                if (peek(line, pos) == '}'){
+                    pos[0]++;
+                    break;
+                }
+                expect(line, pos, ',');
+            }
+        }
+        skipSpace(line, pos);
+        if (pos[0] != line.length()){
+            throw new IllegalArgumentException("Unexpected text after object: " + line);
+        }
+        return values;
+    }
+
+    /**
+     * reads a quoted JSON string, handling the simple escapes
+     * @param line  the line being parsed
+     * @param pos   the position of the opening quote, moved past the closing quote
+     * @return      the unquoted string
+     */
+    private static String readString(String line, int[] pos){
+        expect(line, pos, '"');
+        StringBuilder value = new StringBuilder();
+        while (true) {
+            char c = peek(line, pos);
+            pos[0]++;
+            if (c == '"'){
+                return value.toString();
+            }
+            if (c == '\\'){
+                c = peek(line, pos);
+                pos[0]++;
+            }
+            value.append(c);
+        }
+    }
+
+    /**
+     * reads an unquoted JSON value such as a number
+     * @param line  the line being parsed
+     * @param pos   the position of the value, moved past it
+     * @return      the value as written
+     */
+    private static String readBare(String line, int[] pos){
+        int start = pos[0];
+        while (pos[0] < line.length() && ",}".indexOf(line.charAt(pos[0])) < 0
+                && !Character.isWhitespace(line.charAt(pos[0]))) {
+            pos[0]++;
+        }
+        if (pos[0] == start){
+            throw new IllegalArgumentException("Missing value at column " + start + ": " + line);
+        }
+        return line.substring(start, pos[0]);
+    }
+
+    /**
+     * moves past the passed character, which must be next
+     * @param line      the line being parsed
+     * @param pos       the current position
+     * @param expected  the character that must come next
+     */
+    private static void expect(String line, int[] pos, char expected){
+        if (peek(line, pos) != expected){
+            throw new IllegalArgumentException("Expected '" + expected + "' at column " + pos[0]
+                    + ": " + line);
+        }
+        pos[0]++;
+    }
+
+    /**
+     * gets the character at the current position
+     * @param line  the line being parsed
+     * @param pos   the current position
+     * @return      the character
+     */
+    private static char peek(String line, int[] pos){
+        if (pos[0] >= line.length()){
+            throw new IllegalArgumentException("Unexpected end of line: " + line);
+        }
+        return line.charAt(pos[0]);
+    }
+
+    /**
+     * moves past any whitespace
+     * @param line  the line being parsed
+     * @param pos   the current position
+     */
+    private static void skipSpace(String line, int[] pos){
+        while (pos[0] < line.length() && Character.isWhitespace(line.charAt(pos[0]))) {
+            pos[0]++;
+        }
+    }
+}
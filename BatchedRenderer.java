@@ -0,0 +1,235 @@
+import java.awt.*;
+import java.awt.geom.Path2D;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.awt.BasicStroke.*;
+
+/**
+ * renderer which draws branches in batches instead of one at a time. Every branch on a level has
+ * the same width and color, so the segments of a level are collected into one path and drawn
+ * with a single stroke and color change, instead of changing the graphics state for each branch.
+ * The paths are kept between frames so drawing the same size of tree again allocates nothing.
+ * Drawing by level changes which branch ends up on top where branches overlap: every branch of a
+ * deeper level is drawn over every branch of a shallower one, where drawing the buffer in order
+ * draws a right subtree over the whole left subtree before it. With wide round caps and narrow
+ * angles the two subtrees overlap, so the pixels can differ from drawing each branch on its own.
+ * @author Gwen Tait
+ * @version 10-17-26
+ */
+public class BatchedRenderer {
+    /**
+     * the most segments to collect into one path before drawing it, which keeps each path
+     * small enough for Java2D to rasterize efficiently
+     */
+    private static final int MAX_SEGMENTS_PER_PATH = 1 << 16;
+
+    /**
+     * the path collecting the segments of each level
+     */
+    private Path2D.Float[] paths = new Path2D.Float[0];
+
+    /**
+     * the number of segments in each level's path
+     */
+    private int[] segments = new int[0];
+
+    /**
+     * the width each level's path is drawn with
+     */
+    private int[] widths = new int[0];
+
+    /**
+     * the packed ARGB color each level's path is drawn with
+     */
+    private int[] colors = new int[0];
+
+    /**
+     * whether each level's style was already taken from the whole buffer
+     */
+    private boolean[] styled = new boolean[0];
+
+    /**
+     * draws the branches of a snapshot while holding the buffer's lock. If the snapshot is
+     * indexed and the graphics are clipped to part of the fractal, such as when repainting a
+     * dirty rectangle, only the branches intersecting the clip bounds are drawn
+     * @param g         the graphics to draw with
+     * @param snapshot  the snapshot to draw
+     */
+    public void draw(Graphics2D g, FractalSnapshot snapshot){
+        BranchBuffer branches = snapshot.branches();
+        BranchIndex index = snapshot.index();
+        synchronized (branches) {
+            Rectangle clip = g.getClipBounds();
+            if (index != null && index.getBranches() == branches && clip != null
+                    && !clip.contains(index.getBounds())){
+                draw(g, branches, index.query(clip));
+            } else {
+                draw(g, branches);
+            }
+        }
+    }
+
+    /**
+     * draws the branches in a branch buffer, one path per level. A branch whose width or color
+     * differs from the rest of its level is drawn on its own
+     * @param g         the graphics to draw with
+     * @param branches  the branches to draw
+     */
+    public void draw(Graphics2D g, BranchBuffer branches){
+        draw(g, branches, null);
+    }
+
+    /**
+     * draws some of the branches in a branch buffer, one path per level
+     * @param g         the graphics to draw with
+     * @param branches  the branches to draw
+     * @param indices   the indices of the branches to draw in buffer order, or null to draw
+     *                  every branch
+     */
+    private void draw(Graphics2D g, BranchBuffer branches, int[] indices){
+        int count = indices == null ? branches.size : indices.length;
+        int levels = 0;
+        for (int k = 0; k < count; k++) {
+            levels = Math.max(levels, branches.level[indices == null ? k : indices[k]] + 1);
+        }
+        ensureLevels(levels);
+        for (int lvl = 0; lvl < levels; lvl++) {
+            segments[lvl] = 0;
+            styled[lvl] = false;
+        }
+
+        //a level's path takes the style of its first branch and branches of any other style are
+        //drawn under it, so a subset takes the styles of the whole buffer to draw the same pixels
+        for (int i = 0, missing = indices == null ? 0 : levels; i < branches.size && missing > 0; i++) {
+            int lvl = branches.level[i];
+            if (lvl < 0){
+                i += branches.x1[i] - 1;
+            } else if (lvl < levels && !styled[lvl]){
+                styled[lvl] = true;
+                widths[lvl] = (int) branches.width[i];
+                colors[lvl] = branches.color[i];
+                missing--;
+            }
+        }
+
+        for (int k = 0; k < count; k++) {
+            int i = indices == null ? k : indices[k];
+            int lvl = branches.level[i];
+            int w = (int) branches.width[i];
+            int c = branches.color[i];
+            if (segments[lvl] == 0 && !styled[lvl]){
+                widths[lvl] = w;
+                colors[lvl] = c;
+            } else if (widths[lvl] != w || colors[lvl] != c){
+                drawSegment(g, branches.x1[i], branches.y1[i], branches.x2[i], branches.y2[i], w, c);
+                continue;
+            }
+            paths[lvl].moveTo(branches.x1[i], branches.y1[i]);
+            paths[lvl].lineTo(branches.x2[i], branches.y2[i]);
+            if (++segments[lvl] == MAX_SEGMENTS_PER_PATH){
+                flush(g, lvl);
+            }
+        }
+        for (int lvl = 0; lvl < levels; lvl++) {
+            flush(g, lvl);
+        }
+    }
+
+    /**
+     * draws a list of fractal elements. Runs of Branch records are batched into one path per
+     * width and color, and the batches are drawn before any other kind of element so that
+     * elements still appear in list order. Branch buffers in the list are drawn by level.
+     * @param g         the graphics to draw with
+     * @param elements  the elements to draw
+     */
+    public void draw(Graphics2D g, List<? extends FractalElement> elements){
+        Map<Long, Path2D.Float> batches = new LinkedHashMap<>();
+        for (FractalElement element : elements) {
+            if (element instanceof Branch branch){
+                long key = ((long) branch.width() << 32) | (branch.color().getRGB() & 0xFFFFFFFFL);
+                Path2D.Float path = batches.computeIfAbsent(key, k -> new Path2D.Float());
+                path.moveTo(branch.x1(), branch.y1());
+                path.lineTo(branch.x2(), branch.y2());
+                continue;
+            }
+            flush(g, batches);
+            if (element instanceof BranchBuffer buffer){
+                draw(g, buffer);
+            } else if (element instanceof FractalSnapshot snapshot){
+                draw(g, snapshot);
+            } else {
+                element.draw(g);
+            }
+        }
+        flush(g, batches);
+    }
+
+    /**
+     * draws and clears the batches collected from a list of elements
+     * @param g         the graphics to draw with
+     * @param batches   the paths for each width and color
+     */
+    private void flush(Graphics2D g, Map<Long, Path2D.Float> batches){
+        for (Map.Entry<Long, Path2D.Float> batch : batches.entrySet()) {
+            long key = batch.getKey();
+            g.setStroke(new BasicStroke((int) (key >>> 32), CAP_ROUND, JOIN_ROUND));
+            g.setColor(new Color((int) key, true));
+            g.draw(batch.getValue());
+        }
+        batches.clear();
+    }
+
+    /**
+     * draws and resets the path of one level
+     * @param g     the graphics to draw with
+     * @param lvl   the level to draw
+     */
+    private void flush(Graphics2D g, int lvl){
+        if (segments[lvl] == 0){
+            return;
+        }
+        g.setStroke(new BasicStroke(widths[lvl], CAP_ROUND, JOIN_ROUND));
+        g.setColor(new Color(colors[lvl], true));
+        g.draw(paths[lvl]);
+        paths[lvl].reset();
+        segments[lvl] = 0;
+    }
+
+    /**
+     * draws a single segment which does not fit its level's batch
+     * @param g     the graphics to draw with
+     * @param x1    the x-coordinate of the start of the line
+     * @param y1    the y-coordinate of the start of the line
+     * @param x2    the x-coordinate of the endpoint of the line
+     * @param y2    the y-coordinate of the endpoint of the line
+     * @param width the width of the line
+     * @param color the packed ARGB color of the line
+     */
+    private void drawSegment(Graphics2D g, int x1, int y1, int x2, int y2, int width, int color){
+        g.setStroke(new BasicStroke(width, CAP_ROUND, JOIN_ROUND));
+        g.setColor(new Color(color, true));
+        g.drawLine(x1, y1, x2, y2);
+    }
+
+    /**
+     * makes sure there is a path and style slot for the passed number of levels
+     * @param levels    the number of levels
+     */
+    private void ensureLevels(int levels){
+        if (paths.length >= levels){
+            return;
+        }
+        Path2D.Float[] grown = new Path2D.Float[levels];
+        System.arraycopy(paths, 0, grown, 0, paths.length);
+        for (int lvl = paths.length; lvl < levels; lvl++) {
+            grown[lvl] = new Path2D.Float();
+        }
+        paths = grown;
+        segments = new int[levels];
+        widths = new int[levels];
+        colors = new int[levels];
+        styled = new boolean[levels];
+    }
+}
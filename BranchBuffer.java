@@ -0,0 +1,499 @@
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static java.awt.BasicStroke.*;
+
+/**
+ * structure-of-arrays store for the branches of a fractal. Every branch is one index into a set
+ * of flat primitive columns, so regenerating a tree overwrites values in place instead of
+ * allocating a Branch and a Color for each branch. Branches are kept in the order the recursive
+ * generator visits them (parent, right subtree, left subtree), which means a subtree with
+ * <code>d</code> levels always occupies a contiguous range of <code>2^d - 1</code> indices.
+ * @author Gwen Tait
+ * @version 10-17-26
+ */
+public class BranchBuffer implements FractalElement {
+    /**
+     * the number of bytes each branch takes up across all the columns
+     */
+    public static final int BYTES_PER_BRANCH = 4 * Integer.BYTES + Float.BYTES + Integer.BYTES + Byte.BYTES;
+
+    /**
+     * the x-coordinates of the start of each branch
+     */
+    int[] x1;
+
+    /**
+     * the y-coordinates of the start of each branch
+     */
+    int[] y1;
+
+    /**
+     * the x-coordinates of the endpoint of each branch
+     */
+    int[] x2;
+
+    /**
+     * the y-coordinates of the endpoint of each branch
+     */
+    int[] y2;
+
+    /**
+     * the width of each branch, already truncated to whole pixels the same way Branch does
+     */
+    float[] width;
+
+    /**
+     * the packed ARGB color of each branch
+     */
+    int[] color;
+
+    /**
+     * the level of each branch, where the trunk is level 0
+     */
+    byte[] level;
+
+    /**
+     * the number of branches currently stored
+     */
+    int size;
+
+    /**
+     * strokes reused while drawing, one per level
+     */
+    private BasicStroke[] strokes = new BasicStroke[0];
+
+    /**
+     * colors reused while drawing, one per level
+     */
+    private Color[] colors = new Color[0];
+
+    /**
+     * constructs an empty branch buffer
+     */
+    public BranchBuffer(){
+        this(0);
+    }
+
+    /**
+     * constructs a branch buffer with room for the passed number of branches
+     * @param capacity  the number of branches to allocate space for
+     */
+    public BranchBuffer(int capacity){
+        allocate(capacity);
+    }
+
+    /**
+     * gets the number of branches in a full binary tree of the passed recursion depth
+     * @param recDepth  the recursion depth of the tree
+     * @return          the number of branches, 2^recDepth - 1
+     */
+    public static int capacityFor(int recDepth){
+        return (1 << recDepth) - 1;
+    }
+
+    /**
+     * packs the passed channels into an opaque ARGB int, the same value
+     * <code>new Color(r, g, b).getRGB()</code> would give
+     * @param r     the red channel
+     * @param g     the green channel
+     * @param b     the blue channel
+     * @return      the packed color
+     */
+    public static int packColor(int r, int g, int b){
+        return 0xFF000000 | (r << 16) | (g << 8) | b;
+    }
+
+    /**
+     * prepares the buffer to hold a full tree of the passed recursion depth. The columns are only
+     * reallocated when they are too small, so regenerating at the same or a smaller depth
+     * allocates nothing
+     * @param recDepth  the recursion depth of the tree about to be generated
+     */
+    public void reset(int recDepth){
+        int required = capacityFor(recDepth);
+        if (required > capacity()){
+            allocate(required);
+        }
+        size = required;
+    }
+
+    /**
+     * prepares the buffer to be filled with the passed number of branches by a reader that
+     * writes the columns directly. Existing branches are not kept
+     * @param count     the number of branches about to be stored
+     */
+    void prepare(int count){
+        if (count > capacity()){
+            allocate(count);
+        }
+        size = count;
+    }
+
+    /**
+     * makes room for at least the passed number of branches while keeping the branches already
+     * stored, at least doubling the capacity when it grows
+     * @param capacity  the number of branches to make room for
+     */
+    void ensureCapacity(int capacity){
+        if (capacity > capacity()){
+            resize(Math.max(capacity, 2 * capacity()));
+        }
+    }
+
+    /**
+     * grows the buffer to hold a full tree of the passed recursion depth while keeping the
+     * branches already stored
+     * @param recDepth  the recursion depth of the tree about to be generated
+     */
+    public void grow(int recDepth){
+        int required = capacityFor(recDepth);
+        if (required > capacity()){
+            resize(required);
+        }
+        size = required;
+    }
+
+    /**
+     * removes every branch on the passed level or deeper. The remaining branches keep their
+     * order, which is exactly the order a tree of the smaller depth is stored in
+     * @param levels    the number of levels to keep
+     */
+    public void retainLevels(int levels){
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (level[i] < levels){
+                move(i, kept++);
+            }
+        }
+        size = kept;
+    }
+
+    /**
+     * marks a range of indices as skipped, for a subtree that was never generated. Only the
+     * first index of the range is written; compact() removes the whole range
+     * @param index     the first index of the skipped range
+     * @param span      the number of indices in the range
+     */
+    public void markSkipped(int index, int span){
+        level[index] = -1;
+        x1[index] = span;
+    }
+
+    /**
+     * removes every range marked with markSkipped(), keeping the remaining branches in order
+     * @return  the number of branches removed
+     */
+    public int compact(){
+        int kept = 0;
+        int i = 0;
+        while (i < size) {
+            if (level[i] < 0){
+                i += x1[i];
+            } else {
+                move(i++, kept++);
+            }
+        }
+        int removed = size - kept;
+        size = kept;
+        return removed;
+    }
+
+    /**
+     * removes every branch without touching the columns, so the buffer can be refilled with
+     * append()
+     */
+    public void clear(){
+        size = 0;
+    }
+
+    /**
+     * stores a branch after the last one, doubling the capacity when the buffer is full. Used
+     * when the number of branches is not known up front
+     * @param x1        the x-coordinate of the start of the line
+     * @param y1        the y-coordinate of the start of the line
+     * @param x2        the x-coordinate of the endpoint of the line
+     * @param y2        the y-coordinate of the endpoint of the line
+     * @param width     the width of the line
+     * @param color     the packed ARGB color of the line
+     * @param level     the level of the branch, where the trunk is level 0
+     */
+    public void add(int x1, int y1, int x2, int y2, float width, int color, int level){
+        if (size == capacity()){
+            resize(Math.max(2 * size, 16));
+        }
+        set(size++, x1, y1, x2, y2, width, color, level);
+    }
+
+    /**
+     * copies a branch from another buffer to the end of this one. The buffer must have room
+     * for it
+     * @param other     the buffer to copy from
+     * @param index     the index of the branch in the other buffer
+     */
+    public void append(BranchBuffer other, int index){
+        set(size++, other.x1[index], other.y1[index], other.x2[index], other.y2[index],
+                other.width[index], other.color[index], other.level[index]);
+    }
+
+    /**
+     * copies the branch at one index to another index
+     * @param from  the index to copy from
+     * @param to    the index to copy to
+     */
+    public void move(int from, int to){
+        if (from != to){
+            set(to, x1[from], y1[from], x2[from], y2[from], width[from], color[from], level[from]);
+        }
+    }
+
+    /**
+     * sets the color of every branch from a per-level table. Ranges marked with markSkipped()
+     * are left as they are
+     * @param levelColors   the packed ARGB color for each level
+     */
+    public void recolor(int[] levelColors){
+        for (int i = 0; i < size; i++) {
+            if (level[i] < 0){
+                i += x1[i] - 1;
+                continue;
+            }
+            color[i] = levelColors[level[i]];
+        }
+    }
+
+    /**
+     * sets the width of every branch from a per-level table. Ranges marked with markSkipped()
+     * are left as they are
+     * @param levelWidths   the width for each level
+     */
+    public void rewidth(int[] levelWidths){
+        for (int i = 0; i < size; i++) {
+            if (level[i] < 0){
+                i += x1[i] - 1;
+                continue;
+            }
+            width[i] = levelWidths[level[i]];
+        }
+    }
+
+    /**
+     * gets the number of levels the stored branches span, which for a culled tree can not be
+     * worked out from its size
+     * @return  one more than the deepest level, or 0 if there are no branches
+     */
+    public int levelCount(){
+        int levels = 0;
+        for (int i = 0; i < size; i++) {
+            if (level[i] < 0){
+                i += x1[i] - 1;
+                continue;
+            }
+            levels = Math.max(levels, level[i] + 1);
+        }
+        return levels;
+    }
+
+    /**
+     * replaces the contents of this buffer with a copy of the passed buffer's branches
+     * @param other     the buffer to copy
+     */
+    public void copyFrom(BranchBuffer other){
+        if (other.size > capacity()){
+            allocate(other.size);
+        }
+        System.arraycopy(other.x1, 0, x1, 0, other.size);
+        System.arraycopy(other.y1, 0, y1, 0, other.size);
+        System.arraycopy(other.x2, 0, x2, 0, other.size);
+        System.arraycopy(other.y2, 0, y2, 0, other.size);
+        System.arraycopy(other.width, 0, width, 0, other.size);
+        System.arraycopy(other.color, 0, color, 0, other.size);
+        System.arraycopy(other.level, 0, level, 0, other.size);
+        size = other.size;
+    }
+
+    /**
+     * stores a branch at the passed index
+     * @param index     the index to store the branch at
+     * @param x1        the x-coordinate of the start of the line
+     * @param y1        the y-coordinate of the start of the line
+     * @param x2        the x-coordinate of the endpoint of the line
+     * @param y2        the y-coordinate of the endpoint of the line
+     * @param width     the width of the line
+     * @param color     the packed ARGB color of the line
+     * @param level     the level of the branch, where the trunk is level 0
+     */
+    public void set(int index, int x1, int y1, int x2, int y2, float width, int color, int level){
+        this.x1[index] = x1;
+        this.y1[index] = y1;
+        this.x2[index] = x2;
+        this.y2[index] = y2;
+        this.width[index] = width;
+        this.color[index] = color;
+        this.level[index] = (byte) level;
+    }
+
+    /**
+     * gets the number of branches currently stored
+     * @return  the number of branches
+     */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * gets the number of branches the buffer can hold without reallocating
+     * @return  the capacity of the buffer
+     */
+    public int capacity(){
+        return x1.length;
+    }
+
+    /**
+     * gets the number of bytes the columns of this buffer take up
+     * @return  the size of the buffer in bytes
+     */
+    public long sizeInBytes(){
+        return (long) capacity() * BYTES_PER_BRANCH;
+    }
+
+    /**
+     * gets the x-coordinate of the start of a branch
+     * @param i     the index of the branch
+     * @return      the x-coordinate
+     */
+    public int getX1(int i){
+        return x1[i];
+    }
+
+    /**
+     * gets the y-coordinate of the start of a branch
+     * @param i     the index of the branch
+     * @return      the y-coordinate
+     */
+    public int getY1(int i){
+        return y1[i];
+    }
+
+    /**
+     * gets the x-coordinate of the endpoint of a branch
+     * @param i     the index of the branch
+     * @return      the x-coordinate
+     */
+    public int getX2(int i){
+        return x2[i];
+    }
+
+    /**
+     * gets the y-coordinate of the endpoint of a branch
+     * @param i     the index of the branch
+     * @return      the y-coordinate
+     */
+    public int getY2(int i){
+        return y2[i];
+    }
+
+    /**
+     * gets the width of a branch
+     * @param i     the index of the branch
+     * @return      the width
+     */
+    public float getWidth(int i){
+        return width[i];
+    }
+
+    /**
+     * gets the packed ARGB color of a branch
+     * @param i     the index of the branch
+     * @return      the color
+     */
+    public int getColor(int i){
+        return color[i];
+    }
+
+    /**
+     * gets the level of a branch, where the trunk is level 0
+     * @param i     the index of the branch
+     * @return      the level
+     */
+    public int getLevel(int i){
+        return level[i];
+    }
+
+    /**
+     * draws every stored branch the same way Branch.draw does, but reuses one stroke and one
+     * color per level instead of allocating them for each branch
+     * @param g  the passed system graphics reference
+     */
+    public void draw(Graphics g){
+        Graphics2D g2d = (Graphics2D) g;
+        for (int i = 0; i < size; i++) {
+            int lvl = level[i];
+            if (lvl >= strokes.length){
+                growDrawCaches(lvl + 1);
+            }
+            int w = (int) width[i];
+            if (strokes[lvl] == null || strokes[lvl].getLineWidth() != w){
+                strokes[lvl] = new BasicStroke(w, CAP_ROUND, JOIN_ROUND);
+            }
+            if (colors[lvl] == null || colors[lvl].getRGB() != color[i]){
+                colors[lvl] = new Color(color[i], true);
+            }
+            g2d.setStroke(strokes[lvl]);
+            g2d.setColor(colors[lvl]);
+            g2d.drawLine(x1[i], y1[i], x2[i], y2[i]);
+        }
+    }
+
+    /**
+     * copies the stored branches into a list of Branch records, for callers that still
+     * work with FractalElement lists
+     * @return  an ArrayList of branches
+     */
+    public ArrayList<FractalElement> toElements(){
+        ArrayList<FractalElement> elements = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            elements.add(new Branch(x1[i], y1[i], x2[i], y2[i], (int) width[i],
+                    new Color(color[i], true)));
+        }
+        return elements;
+    }
+
+    /**
+     * allocates new columns with the passed capacity. Existing branches are not kept
+     * @param capacity  the number of branches to allocate space for
+     */
+    private void allocate(int capacity){
+        x1 = new int[capacity];
+        y1 = new int[capacity];
+        x2 = new int[capacity];
+        y2 = new int[capacity];
+        width = new float[capacity];
+        color = new int[capacity];
+        level = new byte[capacity];
+    }
+
+    /**
+     * reallocates the columns with the passed capacity, keeping the branches already stored
+     * @param capacity  the number of branches to allocate space for
+     */
+    private void resize(int capacity){
+        x1 = Arrays.copyOf(x1, capacity);
+        y1 = Arrays.copyOf(y1, capacity);
+        x2 = Arrays.copyOf(x2, capacity);
+        y2 = Arrays.copyOf(y2, capacity);
+        width = Arrays.copyOf(width, capacity);
+        color = Arrays.copyOf(color, capacity);
+        level = Arrays.copyOf(level, capacity);
+    }
+
+    /**
+     * grows the per-level stroke and color caches used by draw()
+     * @param levels    the number of levels the caches must cover
+     */
+    private void growDrawCaches(int levels){
+        strokes = Arrays.copyOf(strokes, levels);
+        colors = Arrays.copyOf(colors, levels);
+    }
+}
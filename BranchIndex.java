@@ -0,0 +1,311 @@
+import java.awt.*;
+import java.util.Arrays;
+
+/**
+ * spatial index over the branches in a branch buffer, for finding the branch under the mouse and
+ * the branches in a region without looking at every branch. The area the branches cover is split
+ * into a grid of square cells, and every branch is binned into the cells its bounding box
+ * overlaps, including its round caps, the same way TiledRasterizer bins branches into tiles. The
+ * index does not change once built, so it can be queried from any thread, but like drawing it
+ * reads the buffer, so it should only be queried while synchronized on the buffer
+ * @author Gwen Tait
+ * @version 10-17-26
+ */
+public class BranchIndex {
+    /**
+     * the width and height of a cell in pixels unless the branches need bigger cells
+     */
+    public static final int DEFAULT_CELL_SIZE = 16;
+
+    /**
+     * the most cells per branch before the cells are made bigger, so that a few branches spread
+     * far apart do not need a huge grid
+     */
+    private static final int MAX_CELLS_PER_BRANCH = 4;
+
+    /**
+     * the branches the index was built over
+     */
+    private final BranchBuffer branches;
+
+    /**
+     * the width and height of a cell in pixels
+     */
+    private final int cellSize;
+
+    /**
+     * the corner of the grid and its number of cell columns and rows
+     */
+    private final int left, top, columns, rows;
+
+    /**
+     * for each cell, the index in binned where its branches start. The extra last entry marks
+     * the end of the final cell
+     */
+    private final int[] cellStart;
+
+    /**
+     * the indices of the branches overlapping each cell, grouped by cell and in buffer order
+     */
+    private final int[] binned;
+
+    /**
+     * builds an index over the passed branches with the default cell size
+     * @param branches  the branches to index
+     */
+    public BranchIndex(BranchBuffer branches){
+        this(branches, DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     * builds an index over the passed branches
+     * @param branches  the branches to index, which should not change while the index is used
+     * @param cellSize  the width and height of a cell in pixels, at least 1. Cells are made
+     *                  bigger if the branches are spread too far apart for this size
+     */
+    public BranchIndex(BranchBuffer branches, int cellSize){
+        if (cellSize < 1){
+            throw new IllegalArgumentException("Cell size must be at least 1");
+        }
+        this.branches = branches;
+
+        //the grid covers the bounding box of every branch
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+        int count = 0;
+        for (int i = 0; i < branches.size; i++) {
+            if (branches.level[i] < 0){
+                i += branches.x1[i] - 1;
+                continue;
+            }
+            int r = radius(branches.width[i]);
+            minX = Math.min(minX, Math.min(branches.x1[i], branches.x2[i]) - r);
+            minY = Math.min(minY, Math.min(branches.y1[i], branches.y2[i]) - r);
+            maxX = Math.max(maxX, Math.max(branches.x1[i], branches.x2[i]) + r);
+            maxY = Math.max(maxY, Math.max(branches.y1[i], branches.y2[i]) + r);
+            count++;
+        }
+        if (count == 0){
+            minX = minY = maxX = maxY = 0;
+        }
+        long maxCells = Math.max(1024L, (long) MAX_CELLS_PER_BRANCH * count);
+        while ((long) ((maxX - minX) / cellSize + 1) * ((maxY - minY) / cellSize + 1) > maxCells) {
+            cellSize *= 2;
+        }
+        this.cellSize = cellSize;
+        this.left = minX;
+        this.top = minY;
+        this.columns = (maxX - minX) / cellSize + 1;
+        this.rows = (maxY - minY) / cellSize + 1;
+
+        //count how many branches overlap each cell, shifted by one so the prefix sum gives starts
+        int cells = columns * rows;
+        cellStart = new int[cells + 1];
+        for (int i = 0; i < branches.size; i++) {
+            if (branches.level[i] < 0){
+                i += branches.x1[i] - 1;
+                continue;
+            }
+            int r = radius(branches.width[i]);
+            int c0 = column(Math.min(branches.x1[i], branches.x2[i]) - r);
+            int c1 = column(Math.max(branches.x1[i], branches.x2[i]) + r);
+            int r0 = row(Math.min(branches.y1[i], branches.y2[i]) - r);
+            int r1 = row(Math.max(branches.y1[i], branches.y2[i]) + r);
+            for (int row = r0; row <= r1; row++) {
+                for (int column = c0; column <= c1; column++) {
+                    cellStart[row * columns + column + 1]++;
+                }
+            }
+        }
+        for (int cell = 0; cell < cells; cell++) {
+            cellStart[cell + 1] += cellStart[cell];
+        }
+
+        //fill the cells in buffer order, using the next free slot of each cell
+        binned = new int[cellStart[cells]];
+        int[] next = Arrays.copyOf(cellStart, cells);
+        for (int i = 0; i < branches.size; i++) {
+            if (branches.level[i] < 0){
+                i += branches.x1[i] - 1;
+                continue;
+            }
+            int r = radius(branches.width[i]);
+            int c0 = column(Math.min(branches.x1[i], branches.x2[i]) - r);
+            int c1 = column(Math.max(branches.x1[i], branches.x2[i]) + r);
+            int r0 = row(Math.min(branches.y1[i], branches.y2[i]) - r);
+            int r1 = row(Math.max(branches.y1[i], branches.y2[i]) + r);
+            for (int row = r0; row <= r1; row++) {
+                for (int column = c0; column <= c1; column++) {
+                    binned[next[row * columns + column]++] = i;
+                }
+            }
+        }
+    }
+
+    /**
+     * gets the branch buffer the index was built over
+     * @return  the branches
+     */
+    public BranchBuffer getBranches(){
+        return branches;
+    }
+
+    /**
+     * gets the area the indexed branches cover, including their round caps
+     * @return  the bounds of the grid
+     */
+    public Rectangle getBounds(){
+        return new Rectangle(left, top, columns * cellSize, rows * cellSize);
+    }
+
+    /**
+     * finds the branch drawn on top at the passed point. A branch counts if the point is within
+     * half its width plus the slop of its center line. Deeper levels are drawn over shallower
+     * ones and later branches over earlier ones, so the deepest and then latest branch wins
+     * @param x     the x-coordinate of the point
+     * @param y     the y-coordinate of the point
+     * @param slop  how many pixels the point may be away from a branch and still hit it
+     * @return      the index of the branch, or -1 if no branch is at the point
+     */
+    public int branchAt(int x, int y, int slop){
+        int c0 = Math.max(column(x - slop), 0);
+        int c1 = Math.min(column(x + slop), columns - 1);
+        int r0 = Math.max(row(y - slop), 0);
+        int r1 = Math.min(row(y + slop), rows - 1);
+        int best = -1;
+        for (int row = r0; row <= r1; row++) {
+            for (int column = c0; column <= c1; column++) {
+                int cell = row * columns + column;
+                for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+                    int i = binned[k];
+                    if (i >= branches.size || (best >= 0 && !above(i, best))){
+                        continue;
+                    }
+                    double reach = radius(branches.width[i]) + slop;
+                    if (distanceSquared(i, x, y) <= reach * reach){
+                        best = i;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * finds every branch whose bounding box, including its round caps, intersects the passed
+     * area, such as the clip bounds of a repaint
+     * @param area  the area to search
+     * @return      the indices of the branches, in buffer order
+     */
+    public int[] query(Rectangle area){
+        int c0 = Math.max(column(area.x), 0);
+        int c1 = Math.min(column(area.x + area.width - 1), columns - 1);
+        int r0 = Math.max(row(area.y), 0);
+        int r1 = Math.min(row(area.y + area.height - 1), rows - 1);
+        int[] found = new int[16];
+        int count = 0;
+        for (int row = r0; row <= r1; row++) {
+            for (int column = c0; column <= c1; column++) {
+                int cell = row * columns + column;
+                for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+                    int i = binned[k];
+                    if (i >= branches.size){
+                        continue;
+                    }
+                    int r = radius(branches.width[i]);
+                    int minX = Math.max(Math.min(branches.x1[i], branches.x2[i]) - r, area.x);
+                    int minY = Math.max(Math.min(branches.y1[i], branches.y2[i]) - r, area.y);
+                    int maxX = Math.min(Math.max(branches.x1[i], branches.x2[i]) + r,
+                            area.x + area.width - 1);
+                    int maxY = Math.min(Math.max(branches.y1[i], branches.y2[i]) + r,
+                            area.y + area.height - 1);
+
+                    //a branch is in every cell its box overlaps, so it is only reported from the
+                    //cell holding the corner of its overlap with the area
+                    if (minX > maxX || minY > maxY || column(minX) != column || row(minY) != row){
+                        continue;
+                    }
+                    if (count == found.length){
+                        found = Arrays.copyOf(found, 2 * count);
+                    }
+                    found[count++] = i;
+                }
+            }
+        }
+        found = Arrays.copyOf(found, count);
+        Arrays.sort(found);
+        return found;
+    }
+
+    /**
+     * gets the bounding box of a branch including its round caps, such as the area to repaint
+     * when it is highlighted
+     * @param index     the index of the branch
+     * @return          the bounds of the branch
+     */
+    public Rectangle bounds(int index){
+        int r = radius(branches.width[index]);
+        int minX = Math.min(branches.x1[index], branches.x2[index]) - r;
+        int minY = Math.min(branches.y1[index], branches.y2[index]) - r;
+        return new Rectangle(minX, minY,
+                Math.max(branches.x1[index], branches.x2[index]) + r - minX + 1,
+                Math.max(branches.y1[index], branches.y2[index]) + r - minY + 1);
+    }
+
+    /**
+     * checks whether one branch is drawn over another
+     * @param i     the index of the first branch
+     * @param j     the index of the second branch
+     * @return      true if the first branch is drawn later
+     */
+    private boolean above(int i, int j){
+        return branches.level[i] != branches.level[j] ? branches.level[i] > branches.level[j] : i > j;
+    }
+
+    /**
+     * gets the squared distance from a point to the center line of a branch
+     * @param i     the index of the branch
+     * @param x     the x-coordinate of the point
+     * @param y     the y-coordinate of the point
+     * @return      the squared distance in pixels
+     */
+    private double distanceSquared(int i, int x, int y){
+        double dx = branches.x2[i] - branches.x1[i];
+        double dy = branches.y2[i] - branches.y1[i];
+        double px = x - branches.x1[i];
+        double py = y - branches.y1[i];
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared == 0 ? 0 : Math.max(0, Math.min(1, (px * dx + py * dy) / lengthSquared));
+        double ex = px - t * dx;
+        double ey = py - t * dy;
+        return ex * ex + ey * ey;
+    }
+
+    /**
+     * gets the grid column holding the passed x-coordinate, which may be outside the grid
+     * @param x     the x-coordinate
+     * @return      the column
+     */
+    private int column(int x){
+        return Math.floorDiv(x - left, cellSize);
+    }
+
+    /**
+     * gets the grid row holding the passed y-coordinate, which may be outside the grid
+     * @param y     the y-coordinate
+     * @return      the row
+     */
+    private int row(int y){
+        return Math.floorDiv(y - top, cellSize);
+    }
+
+    /**
+     * gets how far a branch's stroke reaches from its center line, rounded up to whole pixels.
+     * Width 0 branches are drawn as the thinnest line, one pixel wide
+     * @param width     the width of the branch
+     * @return          the radius in pixels
+     */
+    private static int radius(float width){
+        return (Math.max((int) width, 1) + 1) / 2;
+    }
+}
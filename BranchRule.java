@@ -0,0 +1,55 @@
+/**
+ * record for one child every branch of a rule-driven fractal may grow, as used by RuleSet. The
+ * child is turned by the rule's angle from its parent, shrunk by the rule's ratio, and grows
+ * with the rule's probability. A jitter turns each child by a random extra angle of up to the
+ * jitter either way, so stochastic rule sets look less regular.
+ * @author Gwen Tait
+ * @version 10-17-26
+ *
+ *
+ * @param angle         the angle of the child relative to its parent in degrees, counterclockwise
+ *                      (to the left) when positive
+ * @param ratio         the ratio of the child's length and width to its parent's, between 0 and 1
+ * @param probability   the chance that the child grows, between 0 and 1
+ * @param jitter        the most the child's angle is randomly turned either way, in degrees
+ */
+public record BranchRule(double angle, double ratio, double probability, double jitter) {
+    /**
+     * checks that the ratio, probability and jitter are in range
+     * @param angle         the angle of the child relative to its parent in degrees
+     * @param ratio         the ratio of the child's length and width to its parent's
+     * @param probability   the chance that the child grows
+     * @param jitter        the most the child's angle is randomly turned either way
+     */
+    public BranchRule {
+        if (!(ratio > 0 && ratio < 1)){
+            throw new IllegalArgumentException("Ratio must be between 0 and 1");
+        }
+        if (!(probability >= 0 && probability <= 1)){
+            throw new IllegalArgumentException("Probability must be between 0 and 1");
+        }
+        if (!(jitter >= 0 && jitter <= 180)){
+            throw new IllegalArgumentException("Jitter must be between 0 and 180 degrees");
+        }
+        if (!Double.isFinite(angle)){
+            throw new IllegalArgumentException("Angle must be a number");
+        }
+    }
+
+    /**
+     * constructs a rule for a child which always grows at exactly the passed angle
+     * @param angle     the angle of the child relative to its parent in degrees
+     * @param ratio     the ratio of the child's length and width to its parent's
+     */
+    public BranchRule(double angle, double ratio){
+        this(angle, ratio, 1, 0);
+    }
+
+    /**
+     * checks whether the child always grows at exactly its angle
+     * @return  true if the rule involves no randomness
+     */
+    public boolean deterministic(){
+        return probability == 1 && jitter == 0;
+    }
+}
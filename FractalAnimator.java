@@ -0,0 +1,303 @@
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * drives a fractal generator through an animation, sweeping the child angles and ratio back and
+ * forth on a fixed timestep. Every frame is generated on the animator's own thread and published
+ * to the generator's observers, which draw it into their offscreen image while the next frame is
+ * generated into the generator's other buffer, so frames are double buffered and no branch is
+ * allocated once both buffers have grown to full size. If generating a frame and painting the
+ * last one take longer than their share of the frame time, the depth is lowered for the
+ * following frames and raised again once there is room for it, and frames that could not be
+ * shown on time are skipped so the animation keeps real-time speed. The generator takes whole
+ * degrees and whole percent ratios, so swept values move in steps of one: a ratio swept from
+ * 55 to 72 only takes 18 distinct values per half period, however many frames are shown, and
+ * the tree visibly steps between them.
+ * @author Gwen Tait
+ * @version 10-17-26
+ */
+public class FractalAnimator {
+    /**
+     * the fraction of the frame time generating and painting a frame may take before the depth
+     * is lowered
+     */
+    private static final double BUDGET_FRACTION = 0.8;
+
+    /**
+     * the number of frames in a row which must fit well inside the budget before the depth
+     * is raised again
+     */
+    private static final int RECOVER_FRAMES = 30;
+
+    /**
+     * the lowest depth the animator lowers the depth to
+     */
+    private static final int MIN_DEPTH = 4;
+
+    /**
+     * the generator to animate, which should generate on the calling thread
+     */
+    private final FractalGenerator generator;
+
+    /**
+     * the options of the first frame. Their depth is the depth the animator aims for
+     */
+    private final FractalOptions base;
+
+    /**
+     * the time between frames in nanoseconds
+     */
+    private final long frameNanos;
+
+    /**
+     * the metrics the drawing records its paint times in, or null to budget generation only
+     */
+    private volatile FractalMetrics metrics;
+
+    /**
+     * the sweeps of the left angle, right angle and ratio, or null for those kept at their base
+     */
+    private Sweep leftSweep, rightSweep, ratioSweep;
+
+    /**
+     * the thread the animation runs on, or null when stopped
+     */
+    private Thread thread;
+
+    /**
+     * the depth frames are currently generated at
+     */
+    private int depth;
+
+    /**
+     * the number of frames generated in a row which fit well inside the budget
+     */
+    private int fastFrames;
+
+    /**
+     * the number of frames generated and skipped so far
+     */
+    private long frames, dropped;
+
+    /**
+     * the time it took to generate and paint the last frame and the longest time any frame
+     * took, in nanoseconds
+     */
+    private long lastFrameNanos, worstFrameNanos;
+
+    /**
+     * the total time spent generating and painting frames in nanoseconds
+     */
+    private long totalFrameNanos;
+
+    /**
+     * constructs an animator for the passed generator
+     * @param generator     the generator to animate, which should not generate asynchronously
+     * @param base          the options of the first frame
+     * @param fps           the number of frames to show per second
+     */
+    public FractalAnimator(FractalGenerator generator, FractalOptions base, int fps){
+        if (fps < 1){
+            throw new IllegalArgumentException("Frame rate must be at least 1");
+        }
+        this.generator = generator;
+        this.base = base;
+        this.frameNanos = 1_000_000_000L / fps;
+        this.depth = base.recDepth();
+    }
+
+    /**
+     * sets the metrics the drawing records its paint times in. Painting happens on the event
+     * dispatch thread while the next frame is generated, so the time of the last paint is added
+     * to each frame's generation time before it is checked against the budget
+     * @param metrics   the metrics the drawing records in, or null to budget generation only
+     */
+    public void setMetrics(FractalMetrics metrics){
+        this.metrics = metrics;
+    }
+
+    /**
+     * sweeps the left child angle back and forth between two values
+     * @param from      the angle at the start, in degrees
+     * @param to        the angle halfway through each period, in degrees
+     * @param seconds   the time to sweep there and back
+     */
+    public synchronized void sweepLeftAngle(int from, int to, double seconds){
+        leftSweep = new Sweep(from, to, seconds);
+    }
+
+    /**
+     * sweeps the right child angle back and forth between two values
+     * @param from      the angle at the start, in degrees
+     * @param to        the angle halfway through each period, in degrees
+     * @param seconds   the time to sweep there and back
+     */
+    public synchronized void sweepRightAngle(int from, int to, double seconds){
+        rightSweep = new Sweep(from, to, seconds);
+    }
+
+    /**
+     * sweeps the child to parent ratio back and forth between two values. The ratio moves in
+     * whole percent steps, so a narrow range steps visibly rather than changing smoothly
+     * @param from      the ratio at the start, as a whole number
+     * @param to        the ratio halfway through each period, as a whole number
+     * @param seconds   the time to sweep there and back
+     */
+    public synchronized void sweepRatio(int from, int to, double seconds){
+        ratioSweep = new Sweep(from, to, seconds);
+    }
+
+    /**
+     * starts the animation on a new thread, if it is not already running
+     */
+    public synchronized void start(){
+        if (thread != null){
+            return;
+        }
+        thread = new Thread(this::run, "fractal-animator");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * stops the animation after the frame being generated
+     */
+    public void stop(){
+        Thread running;
+        synchronized (this) {
+            running = thread;
+            thread = null;
+        }
+        if (running != null){
+            running.interrupt();
+        }
+    }
+
+    /**
+     * gets the frame time statistics of the animation so far
+     * @return  the statistics
+     */
+    public synchronized FrameStats getStats(){
+        return new FrameStats(frames, dropped, lastFrameNanos,
+                frames == 0 ? 0 : totalFrameNanos / frames, worstFrameNanos, depth);
+    }
+
+    /**
+     * the animation loop. Each tick generates the frame for its point in time, then waits for the
+     * next tick. Ticks that have already passed when a frame finishes are skipped
+     */
+    private void run(){
+        long start = System.nanoTime();
+        long tick = 0;
+        while (!Thread.currentThread().isInterrupted()) {
+            long frameStart = System.nanoTime();
+            renderFrame(tick * frameNanos / 1e9);
+            long now = System.nanoTime();
+            FractalMetrics recorder = metrics;
+            record(now - frameStart + (recorder == null ? 0 : recorder.getLastPaintNanos()));
+
+            //skip the ticks that passed while generating, then wait for the next one
+            long next = tick + 1;
+            long behind = (now - start) / frameNanos;
+            if (behind >= next){
+                synchronized (this) {
+                    dropped += behind - tick;
+                }
+                next = behind + 1;
+            }
+            tick = next;
+            long wait = start + tick * frameNanos - System.nanoTime();
+            if (wait > 0){
+                LockSupport.parkNanos(wait);
+            }
+        }
+    }
+
+    /**
+     * generates and publishes the frame for the passed point in time
+     * @param seconds   the time since the animation started
+     */
+    private void renderFrame(double seconds){
+        int frameDepth;
+        int left, right, ratio;
+        synchronized (this) {
+            frameDepth = depth;
+            left = leftSweep == null ? base.lChAngle() : leftSweep.value(seconds);
+            right = rightSweep == null ? base.rChAngle() : rightSweep.value(seconds);
+            ratio = ratioSweep == null ? base.ratio() : ratioSweep.value(seconds);
+        }
+        generator.setOptions(frameDepth, ratio, left, right, base.trunkLength(), base.trunkWidth(),
+                base.trunkColor(), base.leafColor());
+    }
+
+    /**
+     * records how long a frame took to generate and paint and adjusts the depth for the next
+     * frames. A frame over budget lowers the depth right away; the depth is only raised after a
+     * run of frames short enough that one more level, which about doubles the work, would still
+     * fit
+     * @param elapsed   the time the frame took to generate and paint in nanoseconds
+     */
+    private synchronized void record(long elapsed){
+        frames++;
+        lastFrameNanos = elapsed;
+        totalFrameNanos += elapsed;
+        worstFrameNanos = Math.max(worstFrameNanos, elapsed);
+
+        double budget = frameNanos * BUDGET_FRACTION;
+        if (elapsed > budget){
+            depth = Math.max(depth - 1, MIN_DEPTH);
+            fastFrames = 0;
+        } else if (elapsed < budget / 3 && depth < base.recDepth()){
+            if (++fastFrames >= RECOVER_FRAMES){
+                depth++;
+                fastFrames = 0;
+            }
+        } else {
+            fastFrames = 0;
+        }
+    }
+
+    /**
+     * record for the frame time statistics of an animation
+     * @param frames            the number of frames generated
+     * @param dropped           the number of frames skipped because generating ran late
+     * @param lastFrameNanos    the time the last frame took to generate and paint, in nanoseconds
+     * @param meanFrameNanos    the mean time a frame took to generate and paint, in nanoseconds
+     * @param worstFrameNanos   the longest time a frame took to generate and paint, in
+     *                          nanoseconds
+     * @param depth             the depth frames are currently generated at
+     */
+    public record FrameStats(long frames, long dropped, long lastFrameNanos, long meanFrameNanos,
+                             long worstFrameNanos, int depth) {
+    }
+
+    /**
+     * record for one parameter swept smoothly from one value to another and back
+     * @param from      the value at the start of each period
+     * @param to        the value halfway through each period
+     * @param seconds   the length of a period
+     */
+    private record Sweep(int from, int to, double seconds) {
+        /**
+         * checks that the period is positive
+         * @param from      the value at the start of each period
+         * @param to        the value halfway through each period
+         * @param seconds   the length of a period
+         */
+        private Sweep {
+            if (!(seconds > 0)){
+                throw new IllegalArgumentException("Sweep period must be positive");
+            }
+        }
+
+        /**
+         * gets the value at the passed point in time, easing in and out at both ends. The value
+         * is rounded because the generator only takes whole numbers, so it moves in steps
+         * @param time  the time since the animation started, in seconds
+         * @return      the value, rounded to a whole number
+         */
+        int value(double time){
+            double phase = (1 - Math.cos(2 * Math.PI * time / seconds)) / 2;
+            return (int) Math.round(from + (to - from) * phase);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * bounded least-recently-used cache of generated fractals, keyed by their normalized options.
+ * Each fractal is kept with the number of branches culled while generating it, so a hit reports
+ * the same count as generating it again.
+ * The cache can be limited by the total number of branches it holds, by the total bytes of its
+ * branch buffers, or both. The most recently evicted buffer is kept as a spare so the
+ * generator can reuse its columns instead of allocating new ones.
+ * @author Gwen Tait
+ * @version 10-17-26
+ */
+public class FractalCache {
+    /**
+     * the cached fractals, in order from least to most recently used
+     */
+    private final LinkedHashMap<FractalOptions, Entry> entries =
+            new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * the largest total number of branches to hold, or 0 for no limit
+     */
+    private final long maxBranches;
+
+    /**
+     * the largest total size of the cached buffers in bytes, or 0 for no limit
+     */
+    private final long maxBytes;
+
+    /**
+     * the total number of branches currently held
+     */
+    private long branches;
+
+    /**
+     * the total size of the cached buffers in bytes
+     */
+    private long bytes;
+
+    /**
+     * the number of lookups that found a cached fractal
+     */
+    private long hits;
+
+    /**
+     * the number of lookups that found nothing
+     */
+    private long misses;
+
+    /**
+     * the number of fractals evicted to stay within the limits
+     */
+    private long evictions;
+
+    /**
+     * the most recently evicted buffer, kept for reuse, or null
+     */
+    private BranchBuffer spare;
+
+    /**
+     * constructs a new cache with the passed limits. A limit of 0 means that measure is not limited,
+     * but at least one limit must be set
+     * @param maxBranches   the largest total number of branches to hold
+     * @param maxBytes      the largest total size of the cached buffers in bytes
+     */
+    public FractalCache(long maxBranches, long maxBytes){
+        if (maxBranches < 0 || maxBytes < 0){
+            throw new IllegalArgumentException("Cache limits may not be negative");
+        }
+        if (maxBranches == 0 && maxBytes == 0){
+            throw new IllegalArgumentException("Cache must be limited by branches or bytes");
+        }
+        this.maxBranches = maxBranches;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * looks up the fractal generated with the passed options and marks it as most recently used
+     * @param options   the options to look up
+     * @return          the cached fractal, or null if there is none
+     */
+    public synchronized Entry get(FractalOptions options){
+        Entry entry = entries.get(options.normalized());
+        if (entry == null){
+            misses++;
+        } else {
+            hits++;
+        }
+        return entry;
+    }
+
+    /**
+     * adds a generated fractal to the cache, evicting the least recently used fractals until the
+     * cache is within its limits. A fractal larger than the limits on its own is not cached.
+     * The buffer must not be changed while it is in the cache.
+     * @param options   the options the fractal was generated with
+     * @param buffer    the generated branches
+     * @param culled    the number of branches culled while generating them
+     */
+    public synchronized void put(FractalOptions options, BranchBuffer buffer, long culled){
+        if (!fits(buffer.size(), buffer.sizeInBytes())){
+            return;
+        }
+        Entry old = entries.put(options.normalized(), new Entry(buffer, culled));
+        if (old != null && old.branches() == buffer){
+            return;
+        }
+        if (old != null){
+            remove(old.branches());
+        }
+        branches += buffer.size();
+        bytes += buffer.sizeInBytes();
+
+        Iterator<Map.Entry<FractalOptions, Entry>> eldest = entries.entrySet().iterator();
+        while (!fits(branches, bytes)){
+            BranchBuffer evicted = eldest.next().getValue().branches();
+            eldest.remove();
+            remove(evicted);
+            evictions++;
+        }
+    }
+
+    /**
+     * checks whether the passed buffer is currently held by the cache
+     * @param buffer    the buffer to check
+     * @return          true if the buffer is in the cache
+     */
+    public synchronized boolean contains(BranchBuffer buffer){
+        for (Entry entry : entries.values()) {
+            if (entry.branches() == buffer){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * gets a buffer which is not in the cache to generate into, reusing the most recently
+     * evicted buffer when there is one
+     * @return      a buffer the caller owns
+     */
+    public synchronized BranchBuffer takeSpare(){
+        BranchBuffer buffer = spare == null ? new BranchBuffer() : spare;
+        spare = null;
+        return buffer;
+    }
+
+    /**
+     * removes every fractal from the cache. The counters are kept
+     */
+    public synchronized void clear(){
+        entries.clear();
+        branches = 0;
+        bytes = 0;
+    }
+
+    /**
+     * gets the number of lookups that found a cached fractal
+     * @return  the number of hits
+     */
+    public synchronized long getHits(){
+        return hits;
+    }
+
+    /**
+     * gets the number of lookups that found nothing
+     * @return  the number of misses
+     */
+    public synchronized long getMisses(){
+        return misses;
+    }
+
+    /**
+     * gets the number of fractals evicted to stay within the limits
+     * @return  the number of evictions
+     */
+    public synchronized long getEvictions(){
+        return evictions;
+    }
+
+    /**
+     * gets the number of fractals currently cached
+     * @return  the number of entries
+     */
+    public synchronized int size(){
+        return entries.size();
+    }
+
+    /**
+     * gets the total number of branches currently cached
+     * @return  the number of branches
+     */
+    public synchronized long getBranchCount(){
+        return branches;
+    }
+
+    /**
+     * gets the total size of the cached buffers in bytes
+     * @return  the size in bytes
+     */
+    public synchronized long getByteCount(){
+        return bytes;
+    }
+
+    /**
+     * checks whether the passed totals are within the limits
+     * @param branchCount   the total number of branches
+     * @param byteCount     the total size in bytes
+     * @return              true if neither limit is exceeded
+     */
+    private boolean fits(long branchCount, long byteCount){
+        return (maxBranches == 0 || branchCount <= maxBranches)
+                && (maxBytes == 0 || byteCount <= maxBytes);
+    }
+
+    /**
+     * takes a buffer that just left the cache out of the totals and keeps it as the spare
+     * @param buffer    the buffer that left the cache
+     */
+    private void remove(BranchBuffer buffer){
+        branches -= buffer.size();
+        bytes -= buffer.sizeInBytes();
+        spare = buffer;
+    }
+
+    /**
+     * record for a cached fractal
+     * @param branches  the generated branches
+     * @param culled    the number of branches culled while generating them
+     */
+    public record Entry(BranchBuffer branches, long culled) {
+    }
+}
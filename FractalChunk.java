@@ -0,0 +1,25 @@
+import java.awt.*;
+
+/**
+ * record for part of a fractal that is still being generated, streamed to observers so they
+ * can show the shallow levels before the whole tree exists. A build streams its branches level
+ * by level, trunk first, in chunks of a bounded size. The branch buffer is reused for the next
+ * chunk as soon as the observers return, so an observer that needs the branches later has to
+ * copy them
+ * @author Gwen Tait
+ * @version 10-17-26
+ *
+ *
+ * @param request   the setOptions() call the build is for. A new request means a new tree
+ * @param level     the level the branches are on, where the trunk is level 0
+ * @param branches  the branches in this chunk
+ */
+public record FractalChunk(long request, int level, BranchBuffer branches) implements FractalElement {
+    /**
+     * draws the branches in this chunk
+     * @param g  the passed system graphics reference
+     */
+    public void draw(Graphics g){
+        branches.draw(g);
+    }
+}
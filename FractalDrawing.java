@@ -1,6 +1,10 @@
 import javax.swing.*;
 import java.awt.*;
-import java.util.ArrayList;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
 
 /**
  *  observer class which draws the fractal elements received from the subject
@@ -14,9 +18,87 @@ public class FractalDrawing extends JFrame implements FractalObserver  {
     FractalSubject subject;
 
     /**
-     * the elements to draw
+     * the last published fractal to draw, or null if nothing has been published yet
      */
-    ArrayList<FractalElement> elements;
+    volatile FractalSnapshot snapshot;
+
+    /**
+     * the software rasterizer to render with, or null to render with Graphics
+     */
+    private volatile TiledRasterizer rasterizer;
+
+    /**
+     * how many times one notch of the mouse wheel zooms in
+     */
+    private static final double ZOOM_STEP = 1.25;
+
+    /**
+     * how many pixels the mouse may be away from a branch and still hover over or select it
+     */
+    private static final int PICK_SLOP = 2;
+
+    /**
+     * how many pixels the highlight around the selected branch is wider than the branch
+     */
+    private static final int HIGHLIGHT_WIDTH = 4;
+
+    /**
+     * the part of the canvas the user navigated to, which the subject is asked to generate for.
+     * Only used on the event dispatch thread
+     */
+    private FractalView view = FractalView.DEFAULT;
+
+    /**
+     * the metrics paint times are recorded in, or null to not record them
+     */
+    private volatile FractalMetrics metrics;
+
+    /**
+     * whether to draw a summary of the metrics over the fractal
+     */
+    private volatile boolean overlay;
+
+    /**
+     * the panel the fractal is drawn on
+     */
+    private final JPanel panel;
+
+    /**
+     * lock held while streamed branches are queued, or drawn into and copied from the progress
+     * image
+     */
+    private final Object progressLock = new Object();
+
+    /**
+     * the streamed branches not yet drawn into the progress image. The generating thread only
+     * copies chunks in here, so drawing them is not counted as generation time
+     */
+    private final BranchBuffer progressPending = new BranchBuffer(0);
+
+    /**
+     * the request whose branches are queued in progressPending, or 0 if none
+     */
+    private long progressRequest;
+
+    /**
+     * the image the levels streamed for the current build are drawn into, or null
+     */
+    private BufferedImage progressImage;
+
+    /**
+     * the request whose levels are in the progress image, or 0 if none
+     */
+    private long progressImageRequest;
+
+    /**
+     * whether the progress image is newer than the last published snapshot
+     */
+    private boolean progressing;
+
+    /**
+     * the renderer the streamed levels are drawn with, used on the event dispatch thread
+     */
+    private final BatchedRenderer progressRenderer = new BatchedRenderer();
 
     /**
      * constructs a new fractal drawing observer to get info from the passed subject
@@ -26,7 +108,7 @@ public class FractalDrawing extends JFrame implements FractalObserver  {
         //register object as an observer
         this.subject = subject;
         subject.registerObservers(this);
-        elements = subject.getFractalElements();//get starting picture
+        snapshot = subject.getSnapshot();//get starting picture, if there is one yet
 
         //create window for the drawing
         setTitle("Fractal Drawing");
@@ -34,38 +116,409 @@ public class FractalDrawing extends JFrame implements FractalObserver  {
         setResizable(false);
 
         //create panel to draw on
-        JPanel panel = new DrawArea();
+        panel = new DrawArea();
         getContentPane().add(panel);
         setVisible(true);
     }
 
     /**
-     * updates the list of elements by pulling from the subject, then repaints
+     * selects the backend the fractal is rendered with. The tiled rasterizer draws on several
+     * threads and is faster at high depths; without it the branches are drawn with Graphics
+     * @param rasterizer    the rasterizer to render with, or null to render with Graphics
+     */
+    public void setRasterizer(TiledRasterizer rasterizer){
+        this.rasterizer = rasterizer;
+        repaint();
+    }
+
+    /**
+     * sets the metrics paint times and frame latency are recorded in
+     * @param metrics   the metrics to record in, usually the generator's, or null to not record
+     * @param overlay   whether to draw a summary of the metrics over the fractal
+     */
+    public void setMetrics(FractalMetrics metrics, boolean overlay){
+        this.metrics = metrics;
+        this.overlay = overlay && metrics != null;
+        repaint();
+    }
+
+    /**
+     * updates the snapshot by pulling from the subject, then repaints
      */
     public void update(){
-        elements = subject.getFractalElements();
+        update(subject.getSnapshot());
+    }
+
+    /**
+     * stores the published snapshot and repaints. Safe to call from any thread
+     * @param snapshot  the published fractal
+     */
+    @Override
+    public void update(FractalSnapshot snapshot){
+        this.snapshot = snapshot;
+        synchronized (progressLock) {
+            progressing = false;
+            progressPending.clear();
+        }
+        repaint();
+    }
+
+    /**
+     * queues a streamed chunk to be drawn into the progress image on the next paint, which
+     * shows it until the completed snapshot arrives. The first chunk of a new request clears
+     * the image, so the trunk and shallow levels appear right away and deeper levels fill in as
+     * they are generated. Only the branches are copied here, on the generating thread
+     * @param chunk     the streamed branches
+     */
+    @Override
+    public void update(FractalChunk chunk){
+        BranchBuffer branches = chunk.branches();
+        synchronized (progressLock) {
+            if (chunk.request() != progressRequest){
+                progressPending.clear();
+                progressRequest = chunk.request();
+            }
+            progressPending.ensureCapacity(progressPending.size() + branches.size());
+            for (int i = 0; i < branches.size(); i++) {
+                progressPending.append(branches, i);
+            }
+            progressing = true;
+        }
+        repaint();
+    }
+
+    /**
+     * draws the queued streamed branches into the progress image, clearing it first for a new
+     * request. Called on the event dispatch thread while holding progressLock
+     * @param width     the width of the panel
+     * @param height    the height of the panel
+     */
+    private void drawProgress(int width, int height){
+        if (progressImage == null || progressImage.getWidth() != width
+                || progressImage.getHeight() != height){
+            progressImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            progressImageRequest = 0;
+        }
+        Graphics2D g2d = progressImage.createGraphics();
+        try {
+            if (progressImageRequest != progressRequest){
+                g2d.setColor(Color.BLACK);
+                g2d.fillRect(0, 0, width, height);
+                progressImageRequest = progressRequest;
+            }
+            progressRenderer.draw(g2d, progressPending);
+        } finally {
+            g2d.dispose();
+        }
+        progressPending.clear();
+    }
+
+    /**
+     * changes the part of the canvas that is shown and asks the subject to generate for it
+     * @param changed   the new view
+     */
+    private void navigate(FractalView changed){
+        view = changed;
+        subject.setView(changed);
         repaint();
     }
 
     /**
      * private helper class for FractalDrawing, created to override
-     * the paintComponent() function in JPanel
+     * the paintComponent() function in JPanel. The fractal is rendered once per published
+     * snapshot into an offscreen image, so ordinary repaints only copy that image. The mouse
+     * wheel zooms around the cursor, dragging pans and double clicking goes back to the whole
+     * canvas. Until the fractal is regenerated for a new view, the last image is stretched to it
+     * so navigating responds on the next frame. Hovering over a branch shows its level, width and
+     * color, and clicking it highlights it, repainting only the area around the old and new
+     * selection. Snapshots published without a spatial index are indexed the first time the
+     * mouse picks from them, so frames nobody points at are never indexed.
      */
     private class DrawArea extends JPanel {
         /**
-         * override of JPanel's paintComponent. Sets background to black and
-         * draws each of the objects in the ArrayList of elements
+         * the offscreen image the last snapshot was rendered into, or null
+         */
+        private BufferedImage image;
+
+        /**
+         * the version of the snapshot rendered into the image, or -1 if none
+         */
+        private long imageVersion = -1;
+
+        /**
+         * the renderer which draws the branches into the image one level at a time
+         */
+        private final BatchedRenderer renderer = new BatchedRenderer();
+
+        /**
+         * the rasterizer the image was rendered with, or null if it was rendered with Graphics
+         */
+        private TiledRasterizer imageRasterizer;
+
+        /**
+         * the index of the selected branch, or -1 if none is selected
+         */
+        private int selected = -1;
+
+        /**
+         * the version of the snapshot the branch was selected in
+         */
+        private long selectedVersion = -1;
+
+        /**
+         * the index built for picking from a snapshot published without one, or null
+         */
+        private BranchIndex pickIndex;
+
+        /**
+         * the version of the snapshot the pick index was built for, or -1 if none
+         */
+        private long pickVersion = -1;
+
+        /**
+         * constructs the panel and listens for zooming and panning
+         */
+        DrawArea(){
+            MouseAdapter navigation = new MouseAdapter() {
+                /**
+                 * the last point the mouse was dragged to
+                 */
+                private Point last;
+
+                @Override
+                public void mousePressed(MouseEvent e){
+                    last = e.getPoint();
+                }
+
+                @Override
+                public void mouseDragged(MouseEvent e){
+                    if (last != null){
+                        navigate(view.pan(e.getX() - last.x, e.getY() - last.y));
+                    }
+                    last = e.getPoint();
+                }
+
+                @Override
+                public void mouseMoved(MouseEvent e){
+                    setToolTipText(describe(pick(e.getX(), e.getY())));
+                }
+
+                @Override
+                public void mouseClicked(MouseEvent e){
+                    if (e.getClickCount() == 2){
+                        navigate(FractalView.DEFAULT);
+                    } else if (e.getClickCount() == 1){
+                        select(pick(e.getX(), e.getY()));
+                    }
+                }
+
+                @Override
+                public void mouseWheelMoved(MouseWheelEvent e){
+                    navigate(view.zoomAt(Math.pow(ZOOM_STEP, -e.getPreciseWheelRotation()),
+                            e.getX(), e.getY()));
+                }
+            };
+            addMouseListener(navigation);
+            addMouseMotionListener(navigation);
+            addMouseWheelListener(navigation);
+        }
+
+        /**
+         * override of JPanel's paintComponent. Sets background to black and draws the
+         * offscreen image, rendering the last published snapshot into it first if the
+         * image is out of date
          * @param g the <code>Graphics</code> object to protect
          */
         @Override
         protected void paintComponent(Graphics g){
             super.paintComponent(g);
             setBackground(Color.BLACK);
-            for (FractalElement element : elements) {
-                element.draw(g);
+            synchronized (progressLock) {
+                if (progressing && getWidth() > 0 && getHeight() > 0){
+                    drawProgress(getWidth(), getHeight());
+                    g.drawImage(progressImage, 0, 0, null);
+                    return;
+                }
+            }
+            FractalSnapshot current = snapshot;
+            if (current == null){
+                return;
+            }
+            TiledRasterizer tiled = rasterizer;
+            boolean intImage = image != null && image.getType() == BufferedImage.TYPE_INT_RGB;
+            if (image == null || image.getWidth() != getWidth() || image.getHeight() != getHeight()
+                    || (tiled != null && !intImage)){
+                image = tiled != null ? new BufferedImage(getWidth(), getHeight(), BufferedImage.TYPE_INT_RGB)
+                        : getGraphicsConfiguration().createCompatibleImage(getWidth(), getHeight());
+                imageVersion = -1;
+            }
+            FractalMetrics recorder = metrics;
+            if (imageVersion != current.version() || tiled != imageRasterizer){
+                long start = System.nanoTime();
+                renderImage(current, tiled);
+                if (recorder != null){
+                    recorder.recordPaint(current.version(), System.nanoTime() - start);
+                }
+            }
+            FractalView shown = current.view();
+            if (shown.equals(view)){
+                g.drawImage(image, 0, 0, null);
+            } else {
+                //map the image from the view it was generated for to the view being navigated to
+                double factor = view.zoom() / shown.zoom();
+                AffineTransform stretch = new AffineTransform(factor, 0, 0, factor,
+                        (shown.x() - view.x()) * view.zoom(), (shown.y() - view.y()) * view.zoom());
+                ((Graphics2D) g).drawImage(image, stretch, null);
+            }
+            if (selected >= 0 && selectedVersion == current.version() && shown.equals(view)){
+                highlight((Graphics2D) g, current);
+            }
+            if (overlay && recorder != null){
+                g.setColor(Color.WHITE);
+                g.drawString(recorder.summary(), 10, 20);
             }
         }
-    }
-}
 
+        /**
+         * finds the branch under a point of the panel in the snapshot being shown. Branches can
+         * only be found if the snapshot was generated for the current view
+         * @param x     the x-coordinate of the point
+         * @param y     the y-coordinate of the point
+         * @return      the index of the branch, or -1 if there is none
+         */
+        private int pick(int x, int y){
+            FractalSnapshot current = snapshot;
+            if (current == null || !current.view().equals(view)){
+                return -1;
+            }
+            synchronized (current.branches()) {
+                return index(current).branchAt(x, y, PICK_SLOP);
+            }
+        }
+
+        /**
+         * gets the spatial index over a snapshot's branches, building and keeping one for the
+         * latest snapshot if it was published without an index. Must be called while holding
+         * the lock on the snapshot's branches
+         * @param current   the snapshot being shown
+         * @return          the index over its branches
+         */
+        private BranchIndex index(FractalSnapshot current){
+            if (current.index() != null){
+                return current.index();
+            }
+            if (pickVersion != current.version() || pickIndex == null
+                    || pickIndex.getBranches() != current.branches()){
+                pickIndex = new BranchIndex(current.branches());
+                pickVersion = current.version();
+            }
+            return pickIndex;
+        }
+
+        /**
+         * describes a branch of the snapshot being shown for its tooltip
+         * @param index     the index of the branch, or -1 for none
+         * @return          the level, width and color of the branch, or null if there is none
+         */
+        private String describe(int index){
+            FractalSnapshot current = snapshot;
+            if (index < 0 || current == null){
+                return null;
+            }
+            BranchBuffer branches = current.branches();
+            synchronized (branches) {
+                if (index >= branches.size){
+                    return null;
+                }
+                return String.format("level %d, width %.1f, color #%06X", branches.level[index],
+                        branches.width[index], branches.color[index] & 0xFFFFFF);
+            }
+        }
+
+        /**
+         * selects a branch of the snapshot being shown, repainting only the areas of the old
+         * and new highlight
+         * @param index     the index of the branch, or -1 to clear the selection
+         */
+        private void select(int index){
+            FractalSnapshot current = snapshot;
+            if (current == null){
+                return;
+            }
+            Rectangle dirty = null;
+            synchronized (current.branches()) {
+                if (selected >= 0 && selectedVersion == current.version()
+                        && selected < current.branches().size){
+                    dirty = highlightBounds(index(current), selected);
+                }
+                if (index >= 0){
+                    Rectangle bounds = highlightBounds(index(current), index);
+                    dirty = dirty == null ? bounds : dirty.union(bounds);
+                }
+            }
+            selected = index;
+            selectedVersion = current.version();
+            if (dirty != null){
+                repaint(dirty);
+            }
+        }
+
+        /**
+         * gets the area a highlighted branch is drawn in
+         * @param index     the index over the branches
+         * @param branch    the index of the branch
+         * @return          the bounds of the branch grown by the extra width of the highlight
+         */
+        private Rectangle highlightBounds(BranchIndex index, int branch){
+            Rectangle bounds = index.bounds(branch);
+            bounds.grow(HIGHLIGHT_WIDTH, HIGHLIGHT_WIDTH);
+            return bounds;
+        }
+
+        /**
+         * draws the selected branch over the fractal, outlined so it stands out from its color
+         * @param g         the graphics to draw with
+         * @param current   the snapshot being shown
+         */
+        private void highlight(Graphics2D g, FractalSnapshot current){
+            BranchBuffer branches = current.branches();
+            synchronized (branches) {
+                if (selected >= branches.size){
+                    return;
+                }
+                int i = selected;
+                float width = Math.max(branches.width[i], 1);
+                g.setColor(Color.WHITE);
+                g.setStroke(new BasicStroke(width + HIGHLIGHT_WIDTH, BasicStroke.CAP_ROUND,
+                        BasicStroke.JOIN_ROUND));
+                g.drawLine(branches.x1[i], branches.y1[i], branches.x2[i], branches.y2[i]);
+                g.setColor(new Color(branches.color[i], true));
+                g.setStroke(new BasicStroke(width, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+                g.drawLine(branches.x1[i], branches.y1[i], branches.x2[i], branches.y2[i]);
+            }
+        }
 
+        /**
+         * renders the passed snapshot into the offscreen image
+         * @param current   the snapshot to render
+         * @param tiled     the rasterizer to render with, or null to render with Graphics
+         */
+        private void renderImage(FractalSnapshot current, TiledRasterizer tiled){
+            imageRasterizer = tiled;
+            if (tiled != null){
+                tiled.render(current, image, Color.BLACK.getRGB());
+                imageVersion = current.version();
+                return;
+            }
+            Graphics2D g2d = (Graphics2D) image.getGraphics();
+            try {
+                g2d.setColor(Color.BLACK);
+                g2d.fillRect(0, 0, getWidth(), getHeight());
+                renderer.draw(g2d, current);
+            } finally {
+                g2d.dispose();
+            }
+            imageVersion = current.version();
+        }
+    }
+}
@@ -0,0 +1,172 @@
+import java.awt.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * reads and writes the binary fractal format. A file is a fixed-size header followed by the
+ * branch buffer's columns, each packed one after another as little-endian primitives:
+ *
+ * <pre>
+ * offset  size  field
+ *      0     4  magic "FRCT"
+ *      4     4  format version
+ *      8     4  canvas width the branches were generated for
+ *     12     4  canvas height
+ *     16    32  options: depth, ratio, left angle, right angle, trunk length, trunk width,
+ *               trunk color and leaf color as RGB ints
+ *     48     4  branch count n
+ *     52    12  reserved, zero
+ *     64   4n   x1, then y1, x2, y2, width (float) and color columns of 4n bytes each
+ *  64+24n   n   level column
+ * </pre>
+ * Writing streams the columns through a FileChannel in bounded chunks; reading maps the file
+ * and returns views of the mapping, so nothing is copied until the branches are used.
+ * @author Gwen Tait
+ * @version 10-17-26
+ */
+public final class FractalFile {
+    /**
+     * the bytes every fractal file starts with, "FRCT" read as a little-endian int
+     */
+    public static final int MAGIC = 0x54435246;
+
+    /**
+     * the version of the format written by this class
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    /**
+     * the size of the header in bytes, which is where the columns start
+     */
+    public static final int HEADER_SIZE = 64;
+
+    /**
+     * the number of int-sized columns before the level column
+     */
+    static final int WORD_COLUMNS = 6;
+
+    /**
+     * the most branches copied into the write buffer at a time
+     */
+    private static final int CHUNK_BRANCHES = 1 << 14;
+
+    /**
+     * not instantiable
+     */
+    private FractalFile(){
+    }
+
+    /**
+     * writes a generated fractal to a file, replacing the file if it exists
+     * @param path      the file to write
+     * @param options   the options the fractal was generated with
+     * @param width     the width of the canvas it was generated for
+     * @param height    the height of the canvas it was generated for
+     * @param branches  the generated branches, which must not change while being written
+     * @throws IOException if the file can not be written
+     */
+    public static void write(Path path, FractalOptions options, int width, int height,
+                             BranchBuffer branches) throws IOException {
+        int n = branches.size();
+        int chunkSize = Math.max(HEADER_SIZE, 4 * Math.min(n, CHUNK_BRANCHES));
+        ByteBuffer chunk = ByteBuffer.allocateDirect(chunkSize).order(ByteOrder.LITTLE_ENDIAN);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            chunk.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(width).putInt(height)
+                    .putInt(options.recDepth()).putInt(options.ratio())
+                    .putInt(options.lChAngle()).putInt(options.rChAngle())
+                    .putInt(options.trunkLength()).putInt(options.trunkWidth())
+                    .putInt(options.trunkColor().getRGB() & 0xFFFFFF)
+                    .putInt(options.leafColor().getRGB() & 0xFFFFFF)
+                    .putInt(n);
+            while (chunk.position() < HEADER_SIZE) {
+                chunk.put((byte) 0);
+            }
+            drain(channel, chunk);
+
+            for (int[] column : new int[][]{branches.x1, branches.y1, branches.x2, branches.y2}) {
+                writeColumn(channel, chunk, column, null, n);
+            }
+            writeColumn(channel, chunk, null, branches.width, n);
+            writeColumn(channel, chunk, branches.color, null, n);
+            for (int start = 0; start < n; ) {
+                int count = Math.min(chunk.capacity(), n - start);
+                chunk.put(branches.level, start, count);
+                drain(channel, chunk);
+                start += count;
+            }
+        }
+    }
+
+    /**
+     * maps a fractal file into memory. The columns are read straight from the mapping, so even a
+     * fractal with millions of branches opens instantly
+     * @param path  the file to open
+     * @return      the mapped fractal
+     * @throws IOException if the file can not be read or is not a valid fractal file
+     */
+    public static MappedFractal open(Path path) throws IOException {
+        MappedByteBuffer map;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        map.order(ByteOrder.LITTLE_ENDIAN);
+        if (map.capacity() < HEADER_SIZE || map.getInt(0) != MAGIC){
+            throw new IOException(path + " is not a fractal file");
+        }
+        int version = map.getInt(4);
+        if (version != FORMAT_VERSION){
+            throw new IOException(path + " has unsupported format version " + version);
+        }
+        int n = map.getInt(48);
+        if (n < 0 || map.capacity() != HEADER_SIZE + (long) n * (4 * WORD_COLUMNS + 1)){
+            throw new IOException(path + " is truncated or corrupt");
+        }
+        FractalOptions options = new FractalOptions(map.getInt(16), map.getInt(20), map.getInt(24),
+                map.getInt(28), map.getInt(32), map.getInt(36), new Color(map.getInt(40)),
+                new Color(map.getInt(44)));
+        return new MappedFractal(map, options, map.getInt(8), map.getInt(12), n);
+    }
+
+    /**
+     * writes one int or float column through the chunk buffer, a chunk at a time
+     * @param channel   the channel to write to
+     * @param chunk     the empty buffer to copy each chunk into
+     * @param ints      the int column to write, or null to write the float column
+     * @param floats    the float column to write when there is no int column
+     * @param n         the number of values to write
+     * @throws IOException if the column can not be written
+     */
+    private static void writeColumn(FileChannel channel, ByteBuffer chunk, int[] ints,
+                                    float[] floats, int n) throws IOException {
+        for (int start = 0; start < n; start += CHUNK_BRANCHES) {
+            int count = Math.min(CHUNK_BRANCHES, n - start);
+            if (ints != null){
+                chunk.asIntBuffer().put(ints, start, count);
+            } else {
+                chunk.asFloatBuffer().put(floats, start, count);
+            }
+            chunk.position(4 * count);
+            drain(channel, chunk);
+        }
+    }
+
+    /**
+     * writes everything in the buffer to the channel and clears it
+     * @param channel   the channel to write to
+     * @param buffer    the buffer, filled up to its position
+     * @throws IOException if the bytes can not be written
+     */
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -1,9 +1,21 @@
 import java.awt.*;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
 
 /**
- * This class is the generator for the fractal. It uses recursion to generate branches for
- * the fractal. Acts as a subject and notifies observers when changes are available.
+ * This class is the generator for the fractal. It generates branches for the fractal either
+ * level by level, with recursion, or with recursion split across a fork-join pool, either on the
+ * thread that sets the options or on a background thread. Acts as a subject and publishes a
+ * snapshot of every completed fractal to its observers, and can stream each level to them
+ * while it is generated. Trees with equal child angles are symmetric, so they are generated in
+ * mirror image pairs of branches.
  * @author Gwen Tait
  * @version 12-3-24
  */
@@ -29,14 +41,14 @@ public class FractalGenerator implements FractalSubject{
     private double rChAngle;
 
     /**
-     * the initial length for the starting branch
+     * the initial length for the starting branch, scaled to the canvas
      */
-    private int trunkLength;
+    private double trunkLength;
 
     /**
-     * the initial width for the starting branch
+     * the initial width for the starting branch, scaled to the canvas
      */
-    private int trunkWidth;
+    private double trunkWidth;
 
     /**
      * the starting color for the first branch
@@ -66,7 +78,7 @@ public class FractalGenerator implements FractalSubject{
     /**
      * the list of observers of the subject
      */
-    private ArrayList<FractalObserver> observers;
+    private List<FractalObserver> observers;
 
     /**
      * the list of generated fractal elements which can be passed to the
@@ -75,14 +87,230 @@ public class FractalGenerator implements FractalSubject{
     ArrayList<FractalElement> elements;
 
     /**
-     * the x-coordinate for starting point of the first branch
+     * the reusable structure-of-arrays store the branches are generated into
      */
-    private final int X_ORIGIN = 500;
+    private BranchBuffer buffer = new BranchBuffer();
 
     /**
-     * the y-coordinate for the starting point of the first branch
+     * the packed color for each level of the tree, where the trunk is level 0
      */
-    private final int Y_ORIGIN = 800;
+    private int[] levelColors = new int[0];
+
+    /**
+     * the width of the branches on each level, truncated to whole pixels
+     */
+    private int[] levelWidths = new int[0];
+
+    /**
+     * the length of the branches on each level
+     */
+    private double[] levelLengths = new double[0];
+
+    /**
+     * whether to generate level by level instead of recursively when not generating in parallel
+     */
+    private boolean levelOrder = true;
+
+    /**
+     * the buffer indices of the branches on the level being expanded by generateLevelOrder()
+     */
+    private int[] frontierIndex = new int[0];
+
+    /**
+     * the cosine, sine and angle of each branch on the level being expanded
+     */
+    private double[] frontierCos = new double[0], frontierSin = new double[0],
+            frontierAngle = new double[0];
+
+    /**
+     * the same values for the level being filled in, swapped with the frontier after every level
+     */
+    private int[] nextIndex = new int[0];
+    private double[] nextCos = new double[0], nextSin = new double[0], nextAngle = new double[0];
+
+    /**
+     * the buffer index and angle of the mirror image of each branch on the level being expanded,
+     * with an index of -1 for branches generated on their own, and the same for the next level
+     */
+    private int[] frontierMirror = new int[0], nextMirror = new int[0];
+    private double[] frontierMirrorAngle = new double[0], nextMirrorAngle = new double[0];
+
+    /**
+     * whether trees with equal child angles are generated as mirror image pairs of branches
+     */
+    private volatile boolean mirroring = true;
+
+    /**
+     * how close a rotated coordinate offset has to be to a whole number before it is recomputed
+     * with Math.cos/Math.sin. Rounding differences between rotation and trig are many orders of
+     * magnitude smaller than this, so anywhere else both truncate to the same pixel
+     */
+    private static final double TRUNCATION_EPSILON = 1e-6;
+
+    /**
+     * the options passed to the last setOptions() call
+     */
+    private volatile FractalOptions options;
+
+    /**
+     * the options the branch buffer was last generated with, or null if nothing was generated
+     */
+    private FractalOptions generated;
+
+    /**
+     * a second buffer to generate into while the last generated one may still be drawn
+     */
+    private BranchBuffer backBuffer;
+
+    /**
+     * the executor used to generate in the background, or null to generate on the thread
+     * that sets the options
+     */
+    private ExecutorService executor;
+
+    /**
+     * the background build that has not finished yet, or null
+     */
+    private Future<?> pending;
+
+    /**
+     * the number of setOptions() calls so far. A background build is superseded once this
+     * no longer matches the request it was started for
+     */
+    private volatile long latestRequest;
+
+    /**
+     * lock held while recording a setOptions() call, separate from the generator's own lock
+     * so that setting options never waits for a build to finish
+     */
+    private final Object requestLock = new Object();
+
+    /**
+     * the request the current build was started for, or 0 if it can not be superseded
+     */
+    private volatile long building;
+
+    /**
+     * the last snapshot published to the observers, or null if nothing was published
+     */
+    private volatile FractalSnapshot snapshot;
+
+    /**
+     * the version number given to the last snapshot
+     */
+    private long version;
+
+    /**
+     * the area of the canvas that is shown, or null to generate every subtree
+     */
+    private Rectangle viewport;
+
+    /**
+     * the shortest a branch may be before it and everything below it is left out, or 0 to
+     * generate every level
+     */
+    private double minBranchLength;
+
+    /**
+     * whether every published snapshot comes with a spatial index over its branches
+     */
+    private volatile boolean indexing;
+
+    /**
+     * for each level, how far from its starting point the subtree rooted on that level can reach,
+     * including stroke width and pixel truncation
+     */
+    private double[] levelReach = new double[0];
+
+    /**
+     * the number of levels in the last generated buffer, which is less than its recursion
+     * depth when short levels were left out
+     */
+    private int generatedLevels;
+
+    /**
+     * the number of branches left out of the last generated fractal because they were outside
+     * the viewport or too short to see
+     */
+    private long culled;
+
+    /**
+     * the part of the canvas the next build is for
+     */
+    private volatile FractalView view = FractalView.DEFAULT;
+
+    /**
+     * the part of the canvas the branch buffer was last generated for
+     */
+    private FractalView generatedView = FractalView.DEFAULT;
+
+    /**
+     * the most levels a fractal may have once levels are added for the zoom
+     */
+    public static final int MAX_DEPTH = 60;
+
+    /**
+     * the deepest tree stored at fixed indices. Deeper trees are only generated with a viewport,
+     * and only their visible branches are stored
+     */
+    private static final int MAX_INDEXED_DEPTH = 20;
+
+    /**
+     * subtrees with at least this many levels check whether their build was superseded
+     * before being generated recursively
+     */
+    private static final int CANCEL_CHECK_DEPTH = 10;
+
+    /**
+     * the buffer branches are collected in before being streamed to the observers, or null to
+     * only publish completed fractals
+     */
+    private BranchBuffer chunk;
+
+    /**
+     * the metrics published fractals are recorded in, or null to not record them
+     */
+    private volatile FractalMetrics metrics;
+
+    /**
+     * the cache of previously generated fractals, or null to always generate
+     */
+    private FractalCache cache;
+
+    /**
+     * the width of the canvas the options are meant for, in pixels
+     */
+    public static final int CANVAS_WIDTH = 1000;
+
+    /**
+     * the height of the canvas the options are meant for, in pixels
+     */
+    public static final int CANVAS_HEIGHT = 800;
+
+    /**
+     * the x-coordinate on the canvas of the starting point of the first branch
+     */
+    private int originX = CANVAS_WIDTH / 2;
+
+    /**
+     * the y-coordinate on the canvas of the starting point of the first branch
+     */
+    private int originY = CANVAS_HEIGHT;
+
+    /**
+     * the x-coordinate for starting point of the first branch, in the current view
+     */
+    private int xOrigin = originX;
+
+    /**
+     * the y-coordinate for the starting point of the first branch, in the current view
+     */
+    private int yOrigin = originY;
+
+    /**
+     * the factor trunk length and width are scaled by to fit the canvas
+     */
+    private double scale = 1;
 
     /**
      * the starting angle for the first branch
@@ -90,21 +318,146 @@ public class FractalGenerator implements FractalSubject{
     private final double STARTING_ANGLE = Math.PI/2;
 
     /**
-     * constructs a new FractalGenerator object with an empty list of observers
+     * the pool used to generate subtrees in parallel, or null to generate on the calling thread
+     */
+    private ForkJoinPool pool;
+
+    /**
+     * the level at which parallel generation stops splitting the tree into tasks. Every subtree
+     * rooted at this level is generated by a single task
+     */
+    private int cutoffDepth;
+
+    /**
+     * constructs a new FractalGenerator object with an empty list of observers which
+     * generates on the calling thread
      */
     public FractalGenerator(){
-       observers = new ArrayList<>();
+       observers = new CopyOnWriteArrayList<>();
+    }
+
+    /**
+     * constructs a new FractalGenerator object with an empty list of observers which
+     * generates subtrees in parallel
+     * @param threads       the number of threads to generate with
+     * @param cutoffDepth   the level at which to stop splitting the tree into tasks
+     */
+    public FractalGenerator(int threads, int cutoffDepth){
+        this();
+        setParallelism(threads, cutoffDepth);
+    }
+
+    /**
+     * sets how many threads are used to generate the fractal. The tree is split into one task
+     * per subtree rooted at the cutoff depth, and each task writes into its own range of the
+     * branch buffer so no locking is needed. A thread count of 1 generates on the calling thread.
+     * @param threads       the number of threads to generate with, must be at least 1
+     * @param cutoffDepth   the level at which to stop splitting the tree into tasks, must
+     *                      not be negative
+     */
+    public void setParallelism(int threads, int cutoffDepth){
+        if (threads < 1){
+            throw new IllegalArgumentException("Thread count must be at least 1");
+        }
+        if (cutoffDepth < 0){
+            throw new IllegalArgumentException("Cutoff depth may not be negative");
+        }
+        if (pool != null){
+            pool.shutdown();
+        }
+        pool = threads == 1 ? null : new ForkJoinPool(threads);
+        this.cutoffDepth = cutoffDepth;
+    }
+
+    /**
+     * sets the size of the canvas the fractal is generated for. The trunk starts at the bottom
+     * center and trunk length and width are scaled by how much larger the canvas is than the
+     * CANVAS_WIDTH by CANVAS_HEIGHT canvas the options are meant for, so the tree keeps the
+     * same proportions. Fractals generated for another canvas size are dropped from the cache.
+     * @param width     the width of the canvas in pixels, must be positive
+     * @param height    the height of the canvas in pixels, must be positive
+     */
+    public synchronized void setCanvas(int width, int height){
+        if (width < 1 || height < 1){
+            throw new IllegalArgumentException("Canvas size must be positive");
+        }
+        originX = width / 2;
+        originY = height;
+        scale = Math.min((double) width / CANVAS_WIDTH, (double) height / CANVAS_HEIGHT);
+        generated = null;
+        if (cache != null){
+            cache.clear();
+        }
+    }
+
+    /**
+     * sets whether the fractal is generated on a background thread. When it is, setOptions()
+     * returns right away and a newer setOptions() call supersedes a build that has not
+     * finished, so only the latest options are ever published to the observers.
+     * @param asynchronous  true to generate in the background, false to generate on the
+     *                      thread that sets the options
+     */
+    public void setAsynchronous(boolean asynchronous){
+        if (asynchronous && executor == null){
+            executor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "fractal-generator");
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else if (!asynchronous && executor != null){
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    /**
+     * sets whether fractals are streamed to the observers while they are generated. When
+     * streaming, a full rebuild for setOptions() always generates level by level and passes
+     * the observers each level as it is finished, split into chunks of at most the passed
+     * number of branches, before the completed snapshot is published. Streaming trades speed
+     * for the first levels showing sooner: it takes the place of parallel generation, so the
+     * fork-join pool is not used for those rebuilds. The whole tree is still generated into
+     * the branch buffer, so streaming does not lower peak memory, and observers are called on
+     * the generating thread, so time they spend on a chunk counts as generation time.
+     * @param chunkSize     the most branches to pass in one chunk, or 0 to only publish
+     *                      completed fractals
+     */
+    public synchronized void setStreaming(int chunkSize){
+        if (chunkSize < 0){
+            throw new IllegalArgumentException("Chunk size may not be negative");
+        }
+        chunk = chunkSize == 0 ? null : new BranchBuffer(chunkSize);
+    }
+
+    /**
+     * passes a chunk of a fractal that is being generated to every observer
+     * @param streamed  the chunk to pass
+     */
+    private void notifyObservers(FractalChunk streamed){
+        for (FractalObserver observer : observers) {
+            observer.update(streamed);
+        }
     }
 
     /**
-     * notifies observers that an update is available
+     * notifies observers that an update is available by passing each of them the last
+     * published snapshot. Observers are notified on the thread that built the fractal.
      */
     public void notifyObservers(){
+         FractalSnapshot published = snapshot;
          for (FractalObserver observer : observers) {
-             observer.update();
+             observer.update(published);
          }
     }
 
+    /**
+     * gets the last snapshot published to the observers
+     * @return  the snapshot, or null if nothing has been published yet
+     */
+    public FractalSnapshot getSnapshot(){
+        return snapshot;
+    }
+
     /**
      * adds a new observer to the list of observers
      * @param obs  the observer to register
@@ -122,64 +475,1147 @@ public class FractalGenerator implements FractalSubject{
     }
 
     /**
-     * builds an ArrayList of fractal elements using the current settings.
+     * builds an ArrayList of fractal elements using the current settings. The branches are
+     * generated into the branch buffer first and then copied into Branch records.
      * @return  an ArrayList of fractal elements
      */
-    public ArrayList<FractalElement> getFractalElements(){
+    public synchronized ArrayList<FractalElement> getFractalElements(){
+        BranchBuffer branches = getBranchBuffer();
+        synchronized (branches) {
+            elements = branches.toElements();
+        }
+        return elements;
+    }
+
+    /**
+     * generates the branches for the current settings on the calling thread. The returned buffer
+     * may be reused for a later build, so it should only be read while synchronized on it.
+     * @return  the branch buffer holding the generated fractal
+     */
+    public synchronized BranchBuffer getBranchBuffer(){
+        return build(options, 0);
+    }
+
+    /**
+     * generates the branches for the passed options. The buffer last generated may still be
+     * drawn, so the branches are generated into a second buffer while holding its lock, and the
+     * two buffers swap once the build completes. Buffers are only reallocated when the recursion
+     * depth outgrows them, so regenerating allocates nothing per branch. When the settings changed
+     * without moving any branch, only the affected part is redone: colors and widths are
+     * rewritten and a depth change truncates or appends levels. With a viewport, how far a
+     * subtree reaches depends on the widths and the number of levels, so only changes which keep
+     * both, such as new colors, are redone that way. If a cache is set, previously
+     * generated fractals are returned from it without generating anything.
+     * @param requested     the options to generate
+     * @param request       the setOptions() call the build is for, or 0 if it can not be
+     *                      superseded
+     * @return              the branch buffer holding the generated fractal
+     * @throws CancellationException if a newer setOptions() call superseded the build
+     */
+    private synchronized BranchBuffer build(FractalOptions requested, long request){
+        FractalView requestedView = view;
+        if (requested.equals(generated) && requestedView.equals(generatedView)){
+            return buffer;
+        }
+
+        //the cache is keyed by options alone, so it only holds fractals for the default view
+        boolean cacheable = cache != null && requestedView.equals(FractalView.DEFAULT);
+        if (cacheable){
+            FractalCache.Entry entry = cache.get(requested);
+            if (entry != null){
+                BranchBuffer cached = entry.branches();
+                if (!cache.contains(buffer) && buffer != cached){
+                    backBuffer = buffer;
+                }
+                buffer = cached;
+                generated = requested;
+                generatedView = requestedView;
+                generatedLevels = cached.levelCount();
+                culled = entry.culled();
+                return buffer;
+            }
+        }
+        apply(requested, requestedView);
+
         //calculate rgb increments to calculate colors
         redIncrement =  (leafColor.getRed() - trunkColor.getRed()) / recDepth;
         greenIncrement = (leafColor.getGreen() - trunkColor.getGreen()) / recDepth;
         blueIncrement =  (leafColor.getBlue() - trunkColor.getBlue()) / recDepth;
 
-        elements = new ArrayList<>();
-        generateBranches(recDepth, trunkWidth, trunkLength, STARTING_ANGLE, trunkColor,
-                X_ORIGIN, Y_ORIGIN, X_ORIGIN, Y_ORIGIN - trunkLength);
-        return elements;
+        //zooming in makes levels that were too short to see visible, so with a viewport a level
+        //is added for every time the zoom shrinks a branch back to its parent's length
+        int baseDepth = recDepth;
+        if (viewport != null && requestedView.zoom() > 1){
+            int extraLevels = (int) (Math.log(requestedView.zoom()) / -Math.log(ratio));
+            recDepth = Math.min(baseDepth + extraLevels, MAX_DEPTH);
+        }
+
+        //colors only depend on the level, so pack them once per level instead of once per branch.
+        //Added levels keep the color of the deepest level
+        if (levelColors.length < recDepth){
+            levelColors = new int[recDepth];
+        }
+        for (int level = 0; level < recDepth; level++) {
+            int step = Math.min(level, baseDepth - 1);
+            levelColors[level] = BranchBuffer.packColor(trunkColor.getRed() + step * redIncrement,
+                    trunkColor.getGreen() + step * greenIncrement,
+                    trunkColor.getBlue() + step * blueIncrement);
+        }
+
+        //fill in per-level tables, multiplying the same way generateBranches() does
+        if (levelWidths.length < recDepth){
+            levelWidths = new int[recDepth];
+            levelLengths = new double[recDepth];
+        }
+        double width = trunkWidth;
+        double length = trunkLength;
+        for (int level = 0; level < recDepth; level++) {
+            levelWidths[level] = (int) width;
+            levelLengths[level] = length;
+            width *= ratio;
+            length *= ratio;
+        }
+
+        //levels shorter than the minimum length, and everything below them, are left out. The
+        //subtree below a branch that short lands on about one pixel, which the deepest level is
+        //drawn over last, so the first short level is kept in the deepest level's color
+        int requestedDepth = recDepth;
+        while (recDepth > 1 && levelLengths[recDepth - 1] < minBranchLength) {
+            recDepth--;
+        }
+        if (recDepth < requestedDepth){
+            recDepth++;
+            levelColors[recDepth - 1] = levelColors[requestedDepth - 1];
+        }
+        long lodCulled = (1L << requestedDepth) - (1L << recDepth);
+        if (viewport != null){
+            computeReach();
+        }
+
+        //generate into a buffer that is neither the last one generated nor held by the cache.
+        //Culling depends on the reach of each level, so with a viewport the buffer is only
+        //restyled when the levels and widths it was culled with stay the same
+        boolean incremental = generated != null && generated.sameShape(requested)
+                && requestedView.equals(generatedView) && (viewport == null
+                || (recDepth == generatedLevels && requested.trunkWidth() == generated.trunkWidth()));
+        BranchBuffer front = buffer;
+        BranchBuffer target = backBuffer;
+        if (target == null || target == front || (cache != null && cache.contains(target))){
+            target = cache != null ? cache.takeSpare() : new BranchBuffer();
+            if (target == front){
+                target = new BranchBuffer();
+            }
+        }
+
+        building = request;
+        long previousCulled = culled;
+        synchronized (target) {
+            buffer = target;
+            try {
+                culled = lodCulled;
+                if (incremental){
+                    buffer.copyFrom(front);
+                    regenerateChanges(requested);
+                    //the copy was already compacted, so count what the full tree would have had
+                    culled = (1L << requestedDepth) - 1 - buffer.size();
+                } else if (viewport != null && recDepth > MAX_INDEXED_DEPTH){
+                    buffer.clear();
+                    generateVisible(recDepth, trunkWidth, trunkLength, STARTING_ANGLE,
+                            xOrigin, yOrigin, xOrigin, yOrigin - (int) trunkLength);
+                } else if ((pool == null && levelOrder) || (chunk != null && request != 0)){
+                    buffer.reset(recDepth);
+                    generateLevelOrder();
+                } else if (pool == null || recDepth <= cutoffDepth){
+                    buffer.reset(recDepth);
+                    if (mirrored()){
+                        generateMirrored(false);
+                    } else {
+                        generateBranches(0, recDepth, trunkWidth, trunkLength, STARTING_ANGLE,
+                                xOrigin, yOrigin, xOrigin, yOrigin - (int) trunkLength);
+                    }
+                } else if (mirrored()){
+                    buffer.reset(recDepth);
+                    generateMirrored(true);
+                } else {
+                    buffer.reset(recDepth);
+                    pool.invoke(new BranchTask(0, recDepth, trunkWidth, trunkLength,
+                            STARTING_ANGLE, xOrigin, yOrigin, xOrigin, yOrigin - (int) trunkLength));
+                }
+                if (viewport != null){
+                    culled += buffer.compact();
+                }
+            } catch (CancellationException e) {
+                //the partly generated buffer is thrown away and the last one stays current
+                if (chunk != null){
+                    chunk.clear();
+                }
+                buffer = front;
+                backBuffer = target;
+                culled = previousCulled;
+                throw e;
+            } finally {
+                building = 0;
+            }
+        }
+
+        backBuffer = front != null && (cache == null || !cache.contains(front)) ? front : null;
+        generated = requested;
+        generatedView = requestedView;
+        generatedLevels = recDepth;
+        if (cacheable){
+            cache.put(requested, buffer, culled);
+        }
+        return buffer;
+    }
+
+    /**
+     * copies the passed options into the fields used while generating. Angle measures are
+     * converted to radians and ratio is converted into a decimal. Lengths, widths and the
+     * starting point are moved and magnified into the view.
+     * @param requested     the options to generate
+     * @param requestedView the part of the canvas to generate for
+     */
+    private void apply(FractalOptions requested, FractalView requestedView){
+        recDepth = requested.recDepth();
+        ratio = requested.ratio() * .01;
+        lChAngle = Math.toRadians(requested.lChAngle());
+        rChAngle = Math.toRadians(requested.rChAngle());
+        trunkLength = requested.trunkLength() * scale * requestedView.zoom();
+        trunkWidth = requested.trunkWidth() * scale * requestedView.zoom();
+        xOrigin = (int) Math.round((originX - requestedView.x()) * requestedView.zoom());
+        yOrigin = (int) Math.round((originY - requestedView.y()) * requestedView.zoom());
+        trunkColor = requested.trunkColor();
+        leafColor = requested.leafColor();
     }
 
     /**
-     * recursive method for getFractalElements(). Adds a branch with the passed data, then calculates
-     * the info for the next branches and recursively calls itself with that info.
+     * builds the fractal for the passed options and publishes a snapshot of it to the observers,
+     * unless a newer setOptions() call superseded the build. The time, branch count and bytes
+     * allocated for every published fractal are recorded in the metrics, if there are any
+     * @param requested     the options to generate
+     * @param request       the setOptions() call the build is for
+     * @param requestedAt   when the setOptions() call was made, from System.nanoTime()
+     */
+    private void buildAndPublish(FractalOptions requested, long request, long requestedAt){
+        FractalMetrics recorder = metrics;
+        long start = System.nanoTime();
+        long allocatedBefore = recorder == null ? 0 : FractalMetrics.allocatedBytes();
+        FractalSnapshot published;
+        synchronized (this) {
+            BranchBuffer branches;
+            try {
+                branches = build(requested, request);
+            } catch (CancellationException e) {
+                return;
+            }
+            if (request != latestRequest){
+                return;
+            }
+            boolean indexed = indexing;
+            if (snapshot != null && snapshot.branches() == branches
+                    && snapshot.options().equals(requested) && snapshot.view().equals(generatedView)
+                    && (snapshot.index() != null) == indexed){
+                published = snapshot;
+            } else {
+                published = new FractalSnapshot(++version, requested, generatedView, branches,
+                        indexed ? new BranchIndex(branches) : null);
+            }
+            snapshot = published;
+            if (recorder != null){
+                recorder.recordGeneration(published.version(), requestedAt, System.nanoTime() - start,
+                        branches.size(), FractalMetrics.allocatedBytes() - allocatedBefore);
+            }
+        }
+        notifyObservers();
+    }
+
+    /**
+     * throws if the build in progress was superseded by a newer setOptions() call
+     * @throws CancellationException if the build was superseded
+     */
+    private void checkCancelled(){
+        long current = building;
+        if (current != 0 && current != latestRequest){
+            throw new CancellationException("Superseded by newer options");
+        }
+    }
+
+    /**
+     * sets the cache used to skip generation for options that were generated before
+     * @param cache     the cache to use, or null to always generate
+     */
+    public void setCache(FractalCache cache){
+        this.cache = cache;
+    }
+
+    /**
+     * sets the metrics every published fractal is recorded in
+     * @param metrics   the metrics to record in, or null to not record
+     */
+    public void setMetrics(FractalMetrics metrics){
+        this.metrics = metrics;
+    }
+
+    /**
+     * gets the cache used to skip generation, so its hit and miss counters can be read
+     * @return  the cache, or null if there is none
+     */
+    public FractalCache getCache(){
+        return cache;
+    }
+
+    /**
+     * updates the buffer from the last generated options to the current ones when no branch
+     * moved. Levels are truncated or appended when the number of levels to generate changed,
+     * then colors and widths are rewritten if they changed. Colors depend on the depth, and the
+     * deepest level kept by the level of detail takes the color of the deepest requested one, so
+     * a change in either depth always recolors.
+     * @param requested     the options being generated
+     */
+    private void regenerateChanges(FractalOptions requested){
+        if (recDepth < generatedLevels){
+            buffer.retainLevels(recDepth);
+        } else if (recDepth > generatedLevels){
+            appendLevels(generatedLevels);
+        }
+        if (requested.recDepth() != generated.recDepth() || recDepth != generatedLevels
+                || !trunkColor.equals(generated.trunkColor())
+                || !leafColor.equals(generated.leafColor())){
+            buffer.recolor(levelColors);
+        }
+        if (requested.trunkWidth() != generated.trunkWidth()){
+            buffer.rewidth(levelWidths);
+        }
+    }
+
+    /**
+     * grows a buffer holding a tree of the passed depth to the current depth. Existing branches
+     * are moved to the index they have in the deeper tree and new subtrees are generated below
+     * every old leaf with generateBranches(), so the result is the same as a full rebuild.
+     * @param oldDepth  the recursion depth the buffer currently holds
+     */
+    private void appendLevels(int oldDepth){
+        buffer.grow(recDepth);
+        double width = trunkWidth;
+        for (int level = 0; level < oldDepth; level++) {
+            width *= ratio;
+        }
+        expandSubtree(0, 0, oldDepth, recDepth, STARTING_ANGLE, width);
+    }
+
+    /**
+     * recursive method for appendLevels(). Visits the old subtree in reverse order (left subtree,
+     * right subtree, then the branch itself), which means every branch moves to an index at or
+     * after its old one without overwriting a branch that has not been moved yet.
+     * @param oldIndex      the index of the branch in the old tree
+     * @param newIndex      the index of the branch in the new tree
+     * @param oldCount      the number of recursions left below the branch in the old tree
+     * @param newCount      the number of recursions left below the branch in the new tree
+     * @param currAngle     the angle the branch is at
+     * @param leafWidth     the width of the first level to be appended
+     */
+    private void expandSubtree(int oldIndex, int newIndex, int oldCount, int newCount,
+                               double currAngle, double leafWidth){
+        if (oldCount != 1){
+            expandSubtree(oldIndex + (1 << (oldCount - 1)), newIndex + (1 << (newCount - 1)),
+                    oldCount - 1, newCount - 1, currAngle + lChAngle, leafWidth);
+            expandSubtree(oldIndex + 1, newIndex + 1, oldCount - 1, newCount - 1,
+                    currAngle - rChAngle, leafWidth);
+            buffer.move(oldIndex, newIndex);
+            return;
+        }
+
+        //old leaf, so move it and grow its children the same way generateBranches() would
+        buffer.move(oldIndex, newIndex);
+        int x2 = buffer.x2[newIndex];
+        int y2 = buffer.y2[newIndex];
+        double length = levelLengths[recDepth - newCount + 1];
+        int childCount = newCount - 1;
+        generateBranches(newIndex + 1, childCount, leafWidth, length,
+                currAngle - rChAngle, x2, y2,
+                x2 + (int) (length * Math.cos(currAngle - rChAngle)),
+                y2 - (int) (length * Math.sin(currAngle - rChAngle)));
+        generateBranches(newIndex + (1 << childCount), childCount, leafWidth, length,
+                currAngle + lChAngle, x2, y2,
+                x2 + (int) (length * Math.cos(currAngle + lChAngle)),
+                y2 - (int) (length * Math.sin(currAngle + lChAngle)));
+    }
+
+    /**
+     * sets the area of the canvas that is shown. Subtrees that can not reach into the viewport
+     * are not generated, which is checked from how far each level's subtree can reach since
+     * lengths shrink by ratio on every level. Fractals generated for another viewport are
+     * dropped from the cache.
+     * @param viewport  the visible area in canvas coordinates, or null to generate every subtree
+     */
+    public synchronized void setViewport(Rectangle viewport){
+        this.viewport = viewport == null ? null : new Rectangle(viewport);
+        generated = null;
+        if (cache != null){
+            cache.clear();
+        }
+    }
+
+    /**
+     * sets how short a branch may be before it is left out. Every branch on a level has the same
+     * length, so this leaves out whole levels. Branches under one pixel long have no offset
+     * after truncation and only redraw their parent's endpoint, where the deepest level ends up
+     * on top, so the first level that short is still generated in the deepest level's color and
+     * a minimum of 1 draws the same pixels as generating every level. Fractals generated with
+     * another minimum are dropped from the cache.
+     * @param minBranchLength   the shortest branch to generate in pixels, or 0 to generate
+     *                          every level
+     */
+    public synchronized void setLevelOfDetail(double minBranchLength){
+        if (minBranchLength < 0){
+            throw new IllegalArgumentException("Minimum branch length may not be negative");
+        }
+        this.minBranchLength = minBranchLength;
+        generated = null;
+        if (cache != null){
+            cache.clear();
+        }
+    }
+
+    /**
+     * sets whether a spatial index is built over the branches of every published snapshot, for
+     * finding the branch under the mouse and drawing only the branches in a repainted area.
+     * The index is built on the generating thread right after the branches are generated
+     * @param indexing  true to index the branches of every snapshot
+     */
+    public void setIndexing(boolean indexing){
+        this.indexing = indexing;
+    }
+
+    /**
+     * gets the number of branches left out of the last generated fractal because they were
+     * outside the viewport or shorter than the level of detail allows
+     * @return  the number of culled branches
+     */
+    public synchronized long getCulledCount(){
+        return culled;
+    }
+
+    /**
+     * fills in how far the subtree rooted on each level can reach from its starting point: the
+     * lengths of every level below it, plus half the widest stroke and up to two pixels of
+     * truncation per level
+     */
+    private void computeReach(){
+        if (levelReach.length < recDepth){
+            levelReach = new double[recDepth];
+        }
+        double lengths = 0;
+        for (int level = recDepth - 1; level >= 0; level--) {
+            lengths += levelLengths[level];
+            levelReach[level] = lengths + levelWidths[level] / 2.0 + 1 + 2 * (recDepth - level);
+        }
+    }
+
+    /**
+     * checks whether a subtree starting at the passed point can not reach the viewport
+     * @param x         the x-coordinate the subtree starts at
+     * @param y         the y-coordinate the subtree starts at
+     * @param reach     how far the subtree can reach from its starting point
+     * @return          true if the subtree lies entirely outside the viewport
+     */
+    private boolean outsideViewport(int x, int y, double reach){
+        double dx = x < viewport.x ? viewport.x - x : Math.max(x - (viewport.x + viewport.width), 0);
+        double dy = y < viewport.y ? viewport.y - y : Math.max(y - (viewport.y + viewport.height), 0);
+        return dx * dx + dy * dy > reach * reach;
+    }
+
+    /**
+     * sets whether the fractal is generated level by level with generateLevelOrder() or
+     * recursively with generateBranches() when not generating in parallel. Both produce
+     * exactly the same branches.
+     * @param levelOrder    true to generate level by level, false to generate recursively
+     */
+    public void setLevelOrder(boolean levelOrder){
+        this.levelOrder = levelOrder;
+    }
+
+    /**
+     * sets whether trees with equal left and right child angles are generated in mirror image
+     * pairs. Such a tree is symmetric about its trunk, so every branch in the right half has a
+     * mirror image in the left half with its direction reflected. Generating them in pairs finds
+     * the direction of both with one call to Math.cos and Math.sin, or one rotation, instead of
+     * two. Both produce exactly the same branches, which MirroringTest checks over every whole
+     * child angle. Takes effect from the next build, even one generated in the background.
+     * @param mirroring     true to generate symmetric trees in pairs, false to generate every
+     *                      branch on its own
+     */
+    public void setMirroring(boolean mirroring){
+        this.mirroring = mirroring;
+    }
+
+    /**
+     * checks whether the fractal being built is generated in mirror image pairs
+     * @return  true if mirroring is on and the child angles are equal
+     */
+    private boolean mirrored(){
+        return mirroring && lChAngle == rChAngle;
+    }
+
+    /**
+     * truncates the x offset of a branch's mirror image to whole pixels. Truncating toward zero
+     * is symmetric, so this is the negated offset of the branch, unless the offset lands so
+     * close to a whole number that the mirror's own angle could truncate differently, in which
+     * case Math.cos of the mirror's angle is used instead
+     * @param value         the untruncated x offset of the branch
+     * @param offset        the truncated x offset of the branch
+     * @param length        the length of the branch
+     * @param mirrorAngle   the angle of the mirror image
+     * @return              the truncated x offset of the mirror image
+     */
+    private static int mirrorXOffset(double value, int offset, double length, double mirrorAngle){
+        if (Math.abs(value - Math.rint(value)) < TRUNCATION_EPSILON){
+            return (int) (length * Math.cos(mirrorAngle));
+        }
+        return -offset;
+    }
+
+    /**
+     * truncates the y offset of a branch's mirror image to whole pixels, which is the offset of
+     * the branch itself, falling back to Math.sin the same way mirrorXOffset() falls back to
+     * Math.cos
+     * @param value         the untruncated y offset of the branch
+     * @param offset        the truncated y offset of the branch
+     * @param length        the length of the branch
+     * @param mirrorAngle   the angle of the mirror image
+     * @return              the truncated y offset of the mirror image
+     */
+    private static int mirrorYOffset(double value, int offset, double length, double mirrorAngle){
+        if (Math.abs(value - Math.rint(value)) < TRUNCATION_EPSILON){
+            return (int) (length * Math.sin(mirrorAngle));
+        }
+        return offset;
+    }
+
+    /**
+     * non-recursive method for getBranchBuffer(). Expands the tree one level at a time, taking the
+     * width, length and color of every branch from per-level tables. Instead of calling Math.cos
+     * and Math.sin for every branch, a child's direction is found by rotating its parent's
+     * direction by the child angle, so the trig functions are only called for the child angles
+     * themselves. When the tree is mirrored, the trunk's two children are mirror images of each
+     * other, and the children of a mirror image pair pair up crosswise: the right child of one
+     * branch with the left child of the other. Only one branch of each pair is rotated, and its
+     * mirror image is stored by reflecting its offset. If culling separates a pair, the branch
+     * that is still visible is expanded on its own. Branches are stored at the same indices
+     * generateBranches() uses, so the output is identical.
+     */
+    private void generateLevelOrder(){
+        //the last level to be expanded holds half of the leaves' parents
+        int maxFrontier = 1 << Math.max(recDepth - 2, 0);
+        if (frontierIndex.length < maxFrontier){
+            frontierIndex = new int[maxFrontier];
+            frontierCos = new double[maxFrontier];
+            frontierSin = new double[maxFrontier];
+            frontierAngle = new double[maxFrontier];
+            frontierMirror = new int[maxFrontier];
+            frontierMirrorAngle = new double[maxFrontier];
+            nextIndex = new int[maxFrontier];
+            nextCos = new double[maxFrontier];
+            nextSin = new double[maxFrontier];
+            nextAngle = new double[maxFrontier];
+            nextMirror = new int[maxFrontier];
+            nextMirrorAngle = new double[maxFrontier];
+        }
+        double rCos = Math.cos(rChAngle), rSin = Math.sin(rChAngle);
+        double lCos = Math.cos(lChAngle), lSin = Math.sin(lChAngle);
+
+        //the trunk
+        if (viewport != null && outsideViewport(xOrigin, yOrigin, levelReach[0])){
+            buffer.markSkipped(0, buffer.size());
+            return;
+        }
+        buffer.set(0, xOrigin, yOrigin, xOrigin, yOrigin - (int) trunkLength,
+                levelWidths[0], levelColors[0], 0);
+        boolean streaming = chunk != null && building != 0;
+        if (streaming){
+            stream(0, 0);
+            flushChunk(0);
+        }
+        frontierIndex[0] = 0;
+        frontierCos[0] = Math.cos(STARTING_ANGLE);
+        frontierSin[0] = Math.sin(STARTING_ANGLE);
+        frontierAngle[0] = STARTING_ANGLE;
+        //the trunk is its own mirror image
+        frontierMirror[0] = mirrored() ? 0 : -1;
+        frontierMirrorAngle[0] = STARTING_ANGLE;
+        int frontierSize = 1;
+
+        for (int level = 1; level < recDepth; level++) {
+            checkCancelled();
+            double len = levelLengths[level];
+            int w = levelWidths[level];
+            int c = levelColors[level];
+            int leftOffset = 1 << (recDepth - level); //size of the right subtree plus one
+            boolean last = level == recDepth - 1;
+            boolean culling = viewport != null;
+            double reach = culling ? levelReach[level] : 0;
+            int nextSize = 0;
+            for (int j = 0; j < frontierSize; j++) {
+                int parent = frontierIndex[j];
+                int mirror = frontierMirror[j];
+                double cos = frontierCos[j];
+                double sin = frontierSin[j];
+                double angle = frontierAngle[j];
+                double mirrorAngle = frontierMirrorAngle[j];
+
+                //both child subtrees start at the parent's endpoint, so they are culled together.
+                //A pair is culled one branch at a time, since the viewport need not be symmetric
+                if (culling && mirror >= 0 && mirror != parent
+                        && outsideViewport(buffer.x2[mirror], buffer.y2[mirror], reach)){
+                    buffer.markSkipped(mirror + 1, leftOffset - 1);
+                    buffer.markSkipped(mirror + leftOffset, leftOffset - 1);
+                    mirror = -1;
+                }
+                if (culling && outsideViewport(buffer.x2[parent], buffer.y2[parent], reach)){
+                    buffer.markSkipped(parent + 1, leftOffset - 1);
+                    buffer.markSkipped(parent + leftOffset, leftOffset - 1);
+                    if (mirror < 0 || mirror == parent){
+                        continue;
+                    }
+                    //expand the mirror image on its own, reflecting the parent's direction
+                    parent = mirror;
+                    mirror = -1;
+                    cos = -cos;
+                    angle = mirrorAngle;
+                }
+                int px = buffer.x2[parent];
+                int py = buffer.y2[parent];
+                int mx = mirror >= 0 ? buffer.x2[mirror] : 0;
+                int my = mirror >= 0 ? buffer.y2[mirror] : 0;
+
+                //right child, rotated clockwise by rChAngle. Its mirror image is the left child
+                //of the parent's mirror image
+                double childAngle = angle - rChAngle;
+                double childCos = cos * rCos + sin * rSin;
+                double childSin = sin * rCos - cos * rSin;
+                double mirrorChildAngle = mirrorAngle + lChAngle;
+                int dx = xOffset(len, childCos, childAngle);
+                int dy = yOffset(len, childSin, childAngle);
+                int index = parent + 1;
+                int mirrorIndex = mirror >= 0 ? mirror + leftOffset : -1;
+                buffer.set(index, px, py, px + dx, py - dy, w, c, level);
+                if (streaming){
+                    stream(index, level);
+                }
+                if (mirrorIndex >= 0){
+                    buffer.set(mirrorIndex, mx, my,
+                            mx + mirrorXOffset(len * childCos, dx, len, mirrorChildAngle),
+                            my - mirrorYOffset(len * childSin, dy, len, mirrorChildAngle), w, c, level);
+                    if (streaming){
+                        stream(mirrorIndex, level);
+                    }
+                }
+                if (!last){
+                    nextIndex[nextSize] = index;
+                    nextCos[nextSize] = childCos;
+                    nextSin[nextSize] = childSin;
+                    nextAngle[nextSize] = childAngle;
+                    nextMirror[nextSize] = mirrorIndex;
+                    nextMirrorAngle[nextSize++] = mirrorChildAngle;
+                }
+
+                //the trunk's left child was stored as the mirror image of its right child
+                if (mirror == parent){
+                    continue;
+                }
+
+                //left child, rotated counterclockwise by lChAngle. Its mirror image is the right
+                //child of the parent's mirror image
+                childAngle = angle + lChAngle;
+                childCos = cos * lCos - sin * lSin;
+                childSin = sin * lCos + cos * lSin;
+                mirrorChildAngle = mirrorAngle - rChAngle;
+                dx = xOffset(len, childCos, childAngle);
+                dy = yOffset(len, childSin, childAngle);
+                index = parent + leftOffset;
+                mirrorIndex = mirror >= 0 ? mirror + 1 : -1;
+                buffer.set(index, px, py, px + dx, py - dy, w, c, level);
+                if (streaming){
+                    stream(index, level);
+                }
+                if (mirrorIndex >= 0){
+                    buffer.set(mirrorIndex, mx, my,
+                            mx + mirrorXOffset(len * childCos, dx, len, mirrorChildAngle),
+                            my - mirrorYOffset(len * childSin, dy, len, mirrorChildAngle), w, c, level);
+                    if (streaming){
+                        stream(mirrorIndex, level);
+                    }
+                }
+                if (!last){
+                    nextIndex[nextSize] = index;
+                    nextCos[nextSize] = childCos;
+                    nextSin[nextSize] = childSin;
+                    nextAngle[nextSize] = childAngle;
+                    nextMirror[nextSize] = mirrorIndex;
+                    nextMirrorAngle[nextSize++] = mirrorChildAngle;
+                }
+            }
+
+            if (streaming){
+                flushChunk(level);
+            }
+
+            //swap the frontier with the level just filled in
+            int[] tempIndex = frontierIndex;
+            frontierIndex = nextIndex;
+            nextIndex = tempIndex;
+            tempIndex = frontierMirror;
+            frontierMirror = nextMirror;
+            nextMirror = tempIndex;
+            double[] temp = frontierCos;
+            frontierCos = nextCos;
+            nextCos = temp;
+            temp = frontierSin;
+            frontierSin = nextSin;
+            nextSin = temp;
+            temp = frontierAngle;
+            frontierAngle = nextAngle;
+            nextAngle = temp;
+            temp = frontierMirrorAngle;
+            frontierMirrorAngle = nextMirrorAngle;
+            nextMirrorAngle = temp;
+            frontierSize = nextSize;
+        }
+    }
+
+    /**
+     * adds a generated branch to the chunk being streamed, passing the chunk on once it is full
+     * @param index     the index of the branch in the buffer
+     * @param level     the level of the branch
+     */
+    private void stream(int index, int level){
+        chunk.append(buffer, index);
+        if (chunk.size() == chunk.capacity()){
+            flushChunk(level);
+        }
+    }
+
+    /**
+     * passes the branches collected in the chunk to the observers and empties it. Stops the
+     * build first if it was superseded, so observers never see branches for old options
+     * @param level     the level the branches are on
+     */
+    private void flushChunk(int level){
+        checkCancelled();
+        if (chunk.size() > 0){
+            notifyObservers(new FractalChunk(building, level, chunk));
+            chunk.clear();
+        }
+    }
+
+    /**
+     * truncates a branch's x offset to whole pixels. The offset is computed from the rotated
+     * direction, unless it lands so close to a whole number that rounding could truncate it
+     * differently than generateBranches() would, in which case Math.cos is used instead
+     * @param length    the length of the branch
+     * @param cos       the cosine of the branch angle found by rotation
+     * @param angle     the branch angle
+     * @return          the truncated offset
+     */
+    private static int xOffset(double length, double cos, double angle){
+        double value = length * cos;
+        if (Math.abs(value - Math.rint(value)) < TRUNCATION_EPSILON){
+            return (int) (length * Math.cos(angle));
+        }
+        return (int) value;
+    }
+
+    /**
+     * truncates a branch's y offset to whole pixels, falling back to Math.sin the same way
+     * xOffset() falls back to Math.cos
+     * @param length    the length of the branch
+     * @param sin       the sine of the branch angle found by rotation
+     * @param angle     the branch angle
+     * @return          the truncated offset
+     */
+    private static int yOffset(double length, double sin, double angle){
+        double value = length * sin;
+        if (Math.abs(value - Math.rint(value)) < TRUNCATION_EPSILON){
+            return (int) (length * Math.sin(angle));
+        }
+        return (int) value;
+    }
+
+    /**
+     * recursive method for getBranchBuffer(). Stores a branch with the passed data, then calculates
+     * the info for the next branches and recursively calls itself with that info. The right
+     * subtree is stored directly after its parent and the left subtree after the right one.
+     * @param index             the index in the branch buffer to store the branch at
      * @param depthCount        the number of recursions left to make
      * @param currTrunkWidth    the current width of the branches
      * @param currTrunkLength   the current length of the branches
      * @param currAngle         the current angle the branch is at
-     * @param color             the current color of the branch
      * @param x1                the x coordinate of the starting point of the branch
      * @param y1                the y coordinate of the starting point of the branch
      * @param x2                the x coordinate of the endpoint of the branch
      * @param y2                the y coordinate of the endpoint of the branch
      */
-    private void generateBranches(int depthCount, double currTrunkWidth, double currTrunkLength,
-                                  double currAngle, Color color, int x1, int y1, int x2, int y2){
+    private void generateBranches(int index, int depthCount, double currTrunkWidth,
+                                  double currTrunkLength, double currAngle,
+                                  int x1, int y1, int x2, int y2){
         if (depthCount != 0) {
-            //first add branch with the passed data
-            elements.add(new Branch(x1, y1, x2, y2, (int) currTrunkWidth, color));
+            if (viewport != null && outsideViewport(x1, y1, levelReach[recDepth - depthCount])){
+                buffer.markSkipped(index, (1 << depthCount) - 1);
+                return;
+            }
+            if (depthCount >= CANCEL_CHECK_DEPTH){
+                checkCancelled();
+            }
+
+            //first store branch with the passed data
+            int level = recDepth - depthCount;
+            buffer.set(index, x1, y1, x2, y2, (int) currTrunkWidth, levelColors[level], level);
 
             //calculate some info for next branches
             currTrunkWidth *= ratio;
             currTrunkLength *= ratio;
-            color = new Color(redIncrement + color.getRed(), greenIncrement + color.getGreen(),
-                     blueIncrement + color.getBlue());
             depthCount--;
 
             //recursively call generateBranches. Performance was worse when I added local variables
             //for angle and branch math, so it takes place in the function calls instead (regrettably).
-            generateBranches(depthCount, currTrunkWidth, currTrunkLength,
-                    currAngle - rChAngle, color, x2, y2,
+            generateBranches(index + 1, depthCount, currTrunkWidth, currTrunkLength,
+                    currAngle - rChAngle, x2, y2,
                     x2 + (int) (currTrunkLength * Math.cos(currAngle - rChAngle)),
                     y2 - (int) (currTrunkLength * Math.sin(currAngle - rChAngle)));
-            generateBranches(depthCount,  currTrunkWidth, currTrunkLength,
-                    currAngle + lChAngle, color, x2, y2,
+            generateBranches(index + (1 << depthCount), depthCount,  currTrunkWidth, currTrunkLength,
+                    currAngle + lChAngle, x2, y2,
                     x2 + (int) (currTrunkLength * Math.cos(currAngle + lChAngle)),
                     y2 - (int) (currTrunkLength * Math.sin(currAngle + lChAngle)));
         }
     }
 
     /**
-     * receives settings from the GUI and updates its variables accordingly. Angle measures
-     * are converted to radians and ratio is converted into a decimal. Then notifies observers
-     * that an update is available
+     * recursive method for getBranchBuffer() when the tree is mirrored. Stores the trunk, then
+     * generates its two subtrees together with generatePair(), either on the calling thread or
+     * split across the fork-join pool
+     * @param parallel  true to split the subtrees into tasks for the pool
+     */
+    private void generateMirrored(boolean parallel){
+        if (viewport != null && outsideViewport(xOrigin, yOrigin, levelReach[0])){
+            buffer.markSkipped(0, buffer.size());
+            return;
+        }
+        int trunkEnd = yOrigin - (int) trunkLength;
+        buffer.set(0, xOrigin, yOrigin, xOrigin, trunkEnd, (int) trunkWidth, levelColors[0], 0);
+        if (recDepth == 1){
+            return;
+        }
+
+        //the trunk's left child is the mirror image of its right child
+        int depthCount = recDepth - 1;
+        double width = trunkWidth * ratio;
+        double length = trunkLength * ratio;
+        if (parallel){
+            pool.invoke(new PairTask(1, 1 << depthCount, depthCount, width, length,
+                    STARTING_ANGLE - rChAngle, STARTING_ANGLE + lChAngle,
+                    xOrigin, trunkEnd, xOrigin, trunkEnd));
+        } else {
+            generatePair(1, 1 << depthCount, depthCount, width, length,
+                    STARTING_ANGLE - rChAngle, STARTING_ANGLE + lChAngle,
+                    xOrigin, trunkEnd, xOrigin, trunkEnd);
+        }
+    }
+
+    /**
+     * recursive method for mirrored trees. Generates a subtree and its mirror image together,
+     * finding both branches' endpoints from one call to Math.cos and Math.sin. The right child of
+     * the branch pairs with the left child of its mirror image and the other way around. If only
+     * one of the two subtrees can reach the viewport, it is generated on its own with
+     * generateBranches().
+     * @param index             the index in the branch buffer to store the branch at
+     * @param mirror            the index in the branch buffer to store its mirror image at
+     * @param depthCount        the number of recursions left to make
+     * @param currTrunkWidth    the current width of the branches
+     * @param currTrunkLength   the current length of the branches
+     * @param currAngle         the current angle the branch is at
+     * @param mirrorAngle       the current angle the mirror image is at
+     * @param x1                the x coordinate of the starting point of the branch
+     * @param y1                the y coordinate of the starting point of the branch
+     * @param mirrorX1          the x coordinate of the starting point of the mirror image
+     * @param mirrorY1          the y coordinate of the starting point of the mirror image
+     */
+    private void generatePair(int index, int mirror, int depthCount, double currTrunkWidth,
+                              double currTrunkLength, double currAngle, double mirrorAngle,
+                              int x1, int y1, int mirrorX1, int mirrorY1){
+        double x = currTrunkLength * Math.cos(currAngle);
+        double y = currTrunkLength * Math.sin(currAngle);
+        int x2 = x1 + (int) x;
+        int y2 = y1 - (int) y;
+        int mirrorX2 = mirrorX1 + mirrorXOffset(x, (int) x, currTrunkLength, mirrorAngle);
+        int mirrorY2 = mirrorY1 - mirrorYOffset(y, (int) y, currTrunkLength, mirrorAngle);
+        int level = recDepth - depthCount;
+        if (viewport != null && splitPair(index, mirror, depthCount, currTrunkWidth,
+                currTrunkLength, currAngle, mirrorAngle, x1, y1, x2, y2,
+                mirrorX1, mirrorY1, mirrorX2, mirrorY2)){
+            return;
+        }
+        if (depthCount >= CANCEL_CHECK_DEPTH){
+            checkCancelled();
+        }
+        buffer.set(index, x1, y1, x2, y2, (int) currTrunkWidth, levelColors[level], level);
+        buffer.set(mirror, mirrorX1, mirrorY1, mirrorX2, mirrorY2, (int) currTrunkWidth,
+                levelColors[level], level);
+        if (depthCount == 1){
+            return;
+        }
+        currTrunkWidth *= ratio;
+        currTrunkLength *= ratio;
+        depthCount--;
+        generatePair(index + 1, mirror + (1 << depthCount), depthCount, currTrunkWidth,
+                currTrunkLength, currAngle - rChAngle, mirrorAngle + lChAngle,
+                x2, y2, mirrorX2, mirrorY2);
+        generatePair(index + (1 << depthCount), mirror + 1, depthCount, currTrunkWidth,
+                currTrunkLength, currAngle + lChAngle, mirrorAngle - rChAngle,
+                x2, y2, mirrorX2, mirrorY2);
+    }
+
+    /**
+     * culls a subtree and its mirror image separately. When neither reaches the viewport both are
+     * marked skipped, and when only one does it is generated on its own with generateBranches()
+     * @param index             the index of the branch
+     * @param mirror            the index of its mirror image
+     * @param depthCount        the number of recursions left to make
+     * @param currTrunkWidth    the current width of the branches
+     * @param currTrunkLength   the current length of the branches
+     * @param currAngle         the current angle the branch is at
+     * @param mirrorAngle       the current angle the mirror image is at
+     * @param x1                the x coordinate of the starting point of the branch
+     * @param y1                the y coordinate of the starting point of the branch
+     * @param x2                the x coordinate of the endpoint of the branch
+     * @param y2                the y coordinate of the endpoint of the branch
+     * @param mirrorX1          the x coordinate of the starting point of the mirror image
+     * @param mirrorY1          the y coordinate of the starting point of the mirror image
+     * @param mirrorX2          the x coordinate of the endpoint of the mirror image
+     * @param mirrorY2          the y coordinate of the endpoint of the mirror image
+     * @return                  true if the pair was handled, false if both subtrees are visible
+     */
+    private boolean splitPair(int index, int mirror, int depthCount, double currTrunkWidth,
+                              double currTrunkLength, double currAngle, double mirrorAngle,
+                              int x1, int y1, int x2, int y2,
+                              int mirrorX1, int mirrorY1, int mirrorX2, int mirrorY2){
+        double reach = levelReach[recDepth - depthCount];
+        boolean outside = outsideViewport(x1, y1, reach);
+        boolean mirrorOutside = outsideViewport(mirrorX1, mirrorY1, reach);
+        if (!outside && !mirrorOutside){
+            return false;
+        }
+        if (outside){
+            buffer.markSkipped(index, (1 << depthCount) - 1);
+        } else {
+            generateBranches(index, depthCount, currTrunkWidth, currTrunkLength, currAngle,
+                    x1, y1, x2, y2);
+        }
+        if (mirrorOutside){
+            buffer.markSkipped(mirror, (1 << depthCount) - 1);
+        } else {
+            generateBranches(mirror, depthCount, currTrunkWidth, currTrunkLength, mirrorAngle,
+                    mirrorX1, mirrorY1, mirrorX2, mirrorY2);
+        }
+        return true;
+    }
+
+    /**
+     * recursive method for trees too deep to store at fixed indices. Generates branches in the
+     * same order as generateBranches(), but appends them to the buffer and leaves out every
+     * subtree that can not reach the viewport, so only the visible branches take up space.
+     * @param depthCount        the number of recursions left to make
+     * @param currTrunkWidth    the current width of the branches
+     * @param currTrunkLength   the current length of the branches
+     * @param currAngle         the current angle the branch is at
+     * @param x1                the x coordinate of the starting point of the branch
+     * @param y1                the y coordinate of the starting point of the branch
+     * @param x2                the x coordinate of the endpoint of the branch
+     * @param y2                the y coordinate of the endpoint of the branch
+     */
+    private void generateVisible(int depthCount, double currTrunkWidth, double currTrunkLength,
+                                 double currAngle, int x1, int y1, int x2, int y2){
+        int level = recDepth - depthCount;
+        if (outsideViewport(x1, y1, levelReach[level])){
+            culled += (1L << depthCount) - 1;
+            return;
+        }
+        if (depthCount >= CANCEL_CHECK_DEPTH){
+            checkCancelled();
+        }
+        buffer.add(x1, y1, x2, y2, (int) currTrunkWidth, levelColors[level], level);
+        if (depthCount == 1){
+            return;
+        }
+
+        //same child math as generateBranches()
+        double width = currTrunkWidth * ratio;
+        double length = currTrunkLength * ratio;
+        generateVisible(depthCount - 1, width, length, currAngle - rChAngle, x2, y2,
+                x2 + (int) (length * Math.cos(currAngle - rChAngle)),
+                y2 - (int) (length * Math.sin(currAngle - rChAngle)));
+        generateVisible(depthCount - 1, width, length, currAngle + lChAngle, x2, y2,
+                x2 + (int) (length * Math.cos(currAngle + lChAngle)),
+                y2 - (int) (length * Math.sin(currAngle + lChAngle)));
+    }
+
+    /**
+     * fork-join task for parallel generation. Above the cutoff depth a task stores its own branch
+     * and forks one task per child subtree; at the cutoff depth it generates the rest of its
+     * subtree with generateBranches(). Each subtree owns a contiguous range of the branch buffer,
+     * so the tasks never write to the same index.
+     */
+    private class BranchTask extends RecursiveAction {
+        /**
+         * the arguments for generateBranches(), see there for their meaning
+         */
+        private final int index, depthCount, x1, y1, x2, y2;
+        private final double currTrunkWidth, currTrunkLength, currAngle;
+
+        /**
+         * constructs a task which generates the subtree rooted at the passed branch
+         * @param index             the index in the branch buffer to store the branch at
+         * @param depthCount        the number of recursions left to make
+         * @param currTrunkWidth    the current width of the branches
+         * @param currTrunkLength   the current length of the branches
+         * @param currAngle         the current angle the branch is at
+         * @param x1                the x coordinate of the starting point of the branch
+         * @param y1                the y coordinate of the starting point of the branch
+         * @param x2                the x coordinate of the endpoint of the branch
+         * @param y2                the y coordinate of the endpoint of the branch
+         */
+        BranchTask(int index, int depthCount, double currTrunkWidth, double currTrunkLength,
+                   double currAngle, int x1, int y1, int x2, int y2){
+            this.index = index;
+            this.depthCount = depthCount;
+            this.currTrunkWidth = currTrunkWidth;
+            this.currTrunkLength = currTrunkLength;
+            this.currAngle = currAngle;
+            this.x1 = x1;
+            this.y1 = y1;
+            this.x2 = x2;
+            this.y2 = y2;
+        }
+
+        /**
+         * generates the subtree, splitting it further while above the cutoff depth
+         */
+        @Override
+        protected void compute(){
+            checkCancelled();
+            int level = recDepth - depthCount;
+            if (viewport != null && outsideViewport(x1, y1, levelReach[level])){
+                buffer.markSkipped(index, (1 << depthCount) - 1);
+                return;
+            }
+            if (level >= cutoffDepth || depthCount == 1){
+                generateBranches(index, depthCount, currTrunkWidth, currTrunkLength, currAngle,
+                        x1, y1, x2, y2);
+                return;
+            }
+            buffer.set(index, x1, y1, x2, y2, (int) currTrunkWidth, levelColors[level], level);
+
+            //same child math as generateBranches()
+            double width = currTrunkWidth * ratio;
+            double length = currTrunkLength * ratio;
+            int childDepth = depthCount - 1;
+            invokeAll(new BranchTask(index + 1, childDepth, width, length,
+                            currAngle - rChAngle, x2, y2,
+                            x2 + (int) (length * Math.cos(currAngle - rChAngle)),
+                            y2 - (int) (length * Math.sin(currAngle - rChAngle))),
+                    new BranchTask(index + (1 << childDepth), childDepth, width, length,
+                            currAngle + lChAngle, x2, y2,
+                            x2 + (int) (length * Math.cos(currAngle + lChAngle)),
+                            y2 - (int) (length * Math.sin(currAngle + lChAngle))));
+        }
+    }
+
+    /**
+     * fork-join task for parallel generation of mirrored trees. Works like BranchTask, but each
+     * task generates a subtree and its mirror image, finishing with generatePair() at the
+     * cutoff depth
+     */
+    private class PairTask extends RecursiveAction {
+        /**
+         * the arguments for generatePair(), see there for their meaning
+         */
+        private final int index, mirror, depthCount, x1, y1, mirrorX1, mirrorY1;
+        private final double currTrunkWidth, currTrunkLength, currAngle, mirrorAngle;
+
+        /**
+         * constructs a task which generates the subtree rooted at the passed branch and its
+         * mirror image
+         * @param index             the index in the branch buffer to store the branch at
+         * @param mirror            the index in the branch buffer to store its mirror image at
+         * @param depthCount        the number of recursions left to make
+         * @param currTrunkWidth    the current width of the branches
+         * @param currTrunkLength   the current length of the branches
+         * @param currAngle         the current angle the branch is at
+         * @param mirrorAngle       the current angle the mirror image is at
+         * @param x1                the x coordinate of the starting point of the branch
+         * @param y1                the y coordinate of the starting point of the branch
+         * @param mirrorX1          the x coordinate of the starting point of the mirror image
+         * @param mirrorY1          the y coordinate of the starting point of the mirror image
+         */
+        PairTask(int index, int mirror, int depthCount, double currTrunkWidth,
+                 double currTrunkLength, double currAngle, double mirrorAngle,
+                 int x1, int y1, int mirrorX1, int mirrorY1){
+            this.index = index;
+            this.mirror = mirror;
+            this.depthCount = depthCount;
+            this.currTrunkWidth = currTrunkWidth;
+            this.currTrunkLength = currTrunkLength;
+            this.currAngle = currAngle;
+            this.mirrorAngle = mirrorAngle;
+            this.x1 = x1;
+            this.y1 = y1;
+            this.mirrorX1 = mirrorX1;
+            this.mirrorY1 = mirrorY1;
+        }
+
+        /**
+         * generates the pair of subtrees, splitting them further while above the cutoff depth
+         */
+        @Override
+        protected void compute(){
+            checkCancelled();
+            int level = recDepth - depthCount;
+            if (level >= cutoffDepth || depthCount == 1){
+                generatePair(index, mirror, depthCount, currTrunkWidth, currTrunkLength,
+                        currAngle, mirrorAngle, x1, y1, mirrorX1, mirrorY1);
+                return;
+            }
+
+            //same endpoint math as generatePair()
+            double x = currTrunkLength * Math.cos(currAngle);
+            double y = currTrunkLength * Math.sin(currAngle);
+            int x2 = x1 + (int) x;
+            int y2 = y1 - (int) y;
+            int mirrorX2 = mirrorX1 + mirrorXOffset(x, (int) x, currTrunkLength, mirrorAngle);
+            int mirrorY2 = mirrorY1 - mirrorYOffset(y, (int) y, currTrunkLength, mirrorAngle);
+            if (viewport != null && splitPair(index, mirror, depthCount, currTrunkWidth,
+                    currTrunkLength, currAngle, mirrorAngle, x1, y1, x2, y2,
+                    mirrorX1, mirrorY1, mirrorX2, mirrorY2)){
+                return;
+            }
+            buffer.set(index, x1, y1, x2, y2, (int) currTrunkWidth, levelColors[level], level);
+            buffer.set(mirror, mirrorX1, mirrorY1, mirrorX2, mirrorY2, (int) currTrunkWidth,
+                    levelColors[level], level);
+            double width = currTrunkWidth * ratio;
+            double length = currTrunkLength * ratio;
+            int childDepth = depthCount - 1;
+            invokeAll(new PairTask(index + 1, mirror + (1 << childDepth), childDepth, width,
+                            length, currAngle - rChAngle, mirrorAngle + lChAngle,
+                            x2, y2, mirrorX2, mirrorY2),
+                    new PairTask(index + (1 << childDepth), mirror + 1, childDepth, width,
+                            length, currAngle + lChAngle, mirrorAngle - rChAngle,
+                            x2, y2, mirrorX2, mirrorY2));
+        }
+    }
+
+    /**
+     * receives settings from the GUI and builds the fractal for them, then publishes a snapshot of
+     * it to the observers. When generating asynchronously this returns right away, and a build
+     * for older settings that has not finished yet is superseded.
      * @param recDepth      the new recursion depth
      * @param ratio         the new child-to-parent ratio, as a whole number
      * @param lChAngle      the new left child angle, in degrees
@@ -191,14 +1627,61 @@ public class FractalGenerator implements FractalSubject{
      */
     public void setOptions(int recDepth, int ratio, int lChAngle, int rChAngle,
                            int trunkLength, int trunkWidth, Color trunkColor, Color leafColor){
-        this.recDepth = recDepth;
-        this.ratio = ratio * .01;
-        this.lChAngle = Math.toRadians(lChAngle);
-        this.rChAngle = Math.toRadians(rChAngle);
-        this.trunkLength = trunkLength;
-        this.trunkWidth = trunkWidth;
-        this.trunkColor = trunkColor;
-        this.leafColor = leafColor;
-        notifyObservers();
+        FractalOptions requested = new FractalOptions(recDepth, ratio, lChAngle, rChAngle,
+                trunkLength, trunkWidth, trunkColor, leafColor);
+        synchronized (requestLock) {
+            options = requested;
+        }
+        requestBuild(requested);
+    }
+
+    /**
+     * sets the part of the canvas that is shown and rebuilds the fractal for it the same way
+     * setOptions() does. With a viewport set, only the subtrees inside the view are generated
+     * and levels are added as the view is zoomed in, so detail keeps appearing well past the
+     * depth the options ask for while the number of branches stays about the same.
+     * @param view  the view to generate for
+     */
+    public void setView(FractalView view){
+        if (view == null){
+            throw new IllegalArgumentException("View may not be null");
+        }
+        FractalOptions current;
+        synchronized (requestLock) {
+            this.view = view;
+            current = options;
+        }
+        if (current != null){
+            requestBuild(current);
+        }
+    }
+
+    /**
+     * gets the part of the canvas the next build is for
+     * @return  the view
+     */
+    public FractalView getView(){
+        return view;
+    }
+
+    /**
+     * builds the fractal for the passed options and publishes it, on the background thread
+     * when generating asynchronously
+     * @param requested     the options to generate
+     */
+    private void requestBuild(FractalOptions requested){
+        long requestedAt = System.nanoTime();
+        long request;
+        synchronized (requestLock) {
+            request = ++latestRequest;
+            if (executor != null){
+                if (pending != null){
+                    pending.cancel(false);
+                }
+                pending = executor.submit(() -> buildAndPublish(requested, request, requestedAt));
+                return;
+            }
+        }
+        buildAndPublish(requested, request, requestedAt);
     }
 }
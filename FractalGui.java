@@ -18,6 +18,16 @@ public class FractalGui extends JFrame{
      */
     FractalSubject subject;
 
+    /**
+     * the deepest a preview may be while a slider is dragged
+     */
+    private static final int PREVIEW_DEPTH = 12;
+
+    /**
+     * the scheduler which coalesces the options before sending them to the subject
+     */
+    private final UpdateScheduler scheduler;
+
     /**
      * the desired number of recursions to make
      */
@@ -70,6 +80,8 @@ public class FractalGui extends JFrame{
             throw new IllegalArgumentException("Subject may not be null");
         }
         this.subject = subject;
+        this.scheduler = new UpdateScheduler(subject, PREVIEW_DEPTH,
+                UpdateScheduler.displayRefreshRate());
 
         //set some defaults
         recursionDepth = 12;
@@ -98,10 +110,8 @@ public class FractalGui extends JFrame{
         recDepthSlider.addChangeListener(new ChangeListener() {
             @Override
             public void stateChanged(ChangeEvent e) {
-                if (!recDepthSlider.getValueIsAdjusting()){
-                    recursionDepth = recDepthSlider.getValue();
-                    updateSettings();
-                }
+                recursionDepth = recDepthSlider.getValue();
+                updateSettings(recDepthSlider.getValueIsAdjusting());
             }
         });
 
@@ -112,10 +122,8 @@ public class FractalGui extends JFrame{
         childToParRatioSlider.addChangeListener(new ChangeListener() {
             @Override
             public void stateChanged(ChangeEvent e) {
-                if (!childToParRatioSlider.getValueIsAdjusting()){
-                    childToParRatio = childToParRatioSlider.getValue();
-                    updateSettings();
-                }
+                childToParRatio = childToParRatioSlider.getValue();
+                updateSettings(childToParRatioSlider.getValueIsAdjusting());
             }
         });
 
@@ -126,10 +134,8 @@ public class FractalGui extends JFrame{
         leftChAngleSlider.addChangeListener(new ChangeListener() {
             @Override
             public void stateChanged(ChangeEvent e) {
-                if (!leftChAngleSlider.getValueIsAdjusting()){
-                    leftChAngle = leftChAngleSlider.getValue();
-                    updateSettings();
-                }
+                leftChAngle = leftChAngleSlider.getValue();
+                updateSettings(leftChAngleSlider.getValueIsAdjusting());
             }
         });
 
@@ -140,10 +146,8 @@ public class FractalGui extends JFrame{
         rightChAngleSlider.addChangeListener(new ChangeListener() {
             @Override
             public void stateChanged(ChangeEvent e) {
-                if (!rightChAngleSlider.getValueIsAdjusting()){
-                    rightChAngle = rightChAngleSlider.getValue();
-                    updateSettings();
-                }
+                rightChAngle = rightChAngleSlider.getValue();
+                updateSettings(rightChAngleSlider.getValueIsAdjusting());
             }
         });
 
@@ -154,10 +158,8 @@ public class FractalGui extends JFrame{
         trunkLengthSlider.addChangeListener(new ChangeListener() {
             @Override
             public void stateChanged(ChangeEvent e) {
-                if (!trunkLengthSlider.getValueIsAdjusting()){
-                    trunkLength = trunkLengthSlider.getValue();
-                    updateSettings();
-                }
+                trunkLength = trunkLengthSlider.getValue();
+                updateSettings(trunkLengthSlider.getValueIsAdjusting());
             }
         });
 
@@ -168,10 +170,8 @@ public class FractalGui extends JFrame{
         trunkWidthSlider.addChangeListener(new ChangeListener() {
             @Override
             public void stateChanged(ChangeEvent e) {
-                if (!trunkWidthSlider.getValueIsAdjusting()){
-                    trunkWidth = trunkWidthSlider.getValue();
-                    updateSettings();
-                }
+                trunkWidth = trunkWidthSlider.getValue();
+                updateSettings(trunkWidthSlider.getValueIsAdjusting());
             }
         });
 
@@ -262,8 +262,17 @@ public class FractalGui extends JFrame{
      * sends all of the current settings to the subject
      */
     private void updateSettings(){
-        subject.setOptions(recursionDepth, childToParRatio, leftChAngle, rightChAngle,
-                trunkLength, trunkWidth, trunkColor, leafColor);
+        updateSettings(false);
+    }
+
+    /**
+     * schedules all of the current settings to be sent to the subject. While a slider is being
+     * dragged a reduced-depth preview is sent at most once per display refresh
+     * @param adjusting     true if a slider is still being dragged
+     */
+    private void updateSettings(boolean adjusting){
+        scheduler.submit(new FractalOptions(recursionDepth, childToParRatio, leftChAngle,
+                rightChAngle, trunkLength, trunkWidth, trunkColor, leafColor), adjusting);
     }
 
     /**
@@ -0,0 +1,322 @@
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * records where the time goes between setting options and the fractal reaching the screen. The
+ * generator records how long each published fractal took to generate, how many branches it has
+ * and how many bytes the generating thread allocated for it; the drawing records how long it
+ * took to render and when it reached the screen, which gives the latency from the options being
+ * set and the interval between frames. Each measurement is kept in a sliding window so p50 and
+ * p99 reflect recent updates. The metrics can be registered as a JMX MBean.
+ * @author Gwen Tait
+ * @version 10-17-26
+ */
+public class FractalMetrics implements FractalMetricsMBean {
+    /**
+     * the number of most recent updates the percentiles are taken over
+     */
+    public static final int DEFAULT_WINDOW = 1024;
+
+    /**
+     * the JVM's thread bean, used to read allocation counters
+     */
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    /**
+     * the sliding windows of generation, paint, latency and frame interval times in nanoseconds
+     */
+    private final SlidingHistogram generation, paint, latency, frameInterval;
+
+    /**
+     * the sliding window of bytes allocated per published fractal
+     */
+    private final SlidingHistogram allocated;
+
+    /**
+     * the number of fractals published since the last reset
+     */
+    private long updates;
+
+    /**
+     * the branch count and allocated bytes of the last published fractal
+     */
+    private int lastBranchCount;
+    private long lastAllocatedBytes;
+
+    /**
+     * the version of the last published snapshot and when the options for it were set
+     */
+    private long publishedVersion = -1;
+    private long publishedRequestedAt;
+
+    /**
+     * the version of the last snapshot to reach the screen and when it did, or -1 for none
+     */
+    private long paintedVersion = -1;
+    private long paintedAt;
+
+    /**
+     * how long the last render took in nanoseconds
+     */
+    private long lastPaintNanos;
+
+    /**
+     * constructs metrics with the default window
+     */
+    public FractalMetrics(){
+        this(DEFAULT_WINDOW);
+    }
+
+    /**
+     * constructs metrics which take percentiles over the passed number of updates
+     * @param window    the number of most recent updates to keep, must be at least 1
+     */
+    public FractalMetrics(int window){
+        generation = new SlidingHistogram(window);
+        paint = new SlidingHistogram(window);
+        latency = new SlidingHistogram(window);
+        frameInterval = new SlidingHistogram(window);
+        allocated = new SlidingHistogram(window);
+    }
+
+    /**
+     * gets the number of bytes the calling thread has allocated so far. Work done on other
+     * threads, like the fork-join pool, is not included
+     * @return  the bytes allocated, or 0 if the JVM does not count them
+     */
+    public static long allocatedBytes(){
+        if (THREADS instanceof com.sun.management.ThreadMXBean counters
+                && counters.isThreadAllocatedMemoryEnabled()){
+            return counters.getCurrentThreadAllocatedBytes();
+        }
+        return 0;
+    }
+
+    /**
+     * registers these metrics with the platform MBean server, so they can be read with JConsole
+     * or any other JMX client
+     * @param name  the name the metrics are registered under
+     * @throws IllegalStateException if the metrics can not be registered
+     */
+    public void register(String name){
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+                    new ObjectName("FractalDrawing:type=Metrics,name=" + ObjectName.quote(name)));
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register metrics " + name, e);
+        }
+    }
+
+    /**
+     * records a published fractal
+     * @param version       the version of the published snapshot
+     * @param requestedAt   when the options for it were set, from System.nanoTime()
+     * @param nanos         how long it took to generate
+     * @param branches      the number of branches in it
+     * @param bytes         the bytes allocated while generating it
+     */
+    public void recordGeneration(long version, long requestedAt, long nanos, int branches,
+                                 long bytes){
+        generation.record(nanos);
+        allocated.record(bytes);
+        synchronized (this) {
+            updates++;
+            lastBranchCount = branches;
+            lastAllocatedBytes = bytes;
+            publishedVersion = version;
+            publishedRequestedAt = requestedAt;
+        }
+    }
+
+    /**
+     * records a fractal being rendered and shown. The latency is only recorded for the last
+     * published snapshot, and the frame interval only once per version
+     * @param version   the version of the rendered snapshot
+     * @param nanos     how long it took to render
+     */
+    public void recordPaint(long version, long nanos){
+        paint.record(nanos);
+        long now = System.nanoTime();
+        synchronized (this) {
+            lastPaintNanos = nanos;
+            if (version == paintedVersion){
+                return;
+            }
+            if (version == publishedVersion){
+                latency.record(now - publishedRequestedAt);
+            }
+            if (paintedVersion != -1){
+                frameInterval.record(now - paintedAt);
+            }
+            paintedVersion = version;
+            paintedAt = now;
+        }
+    }
+
+    /**
+     * gets how long the last render took
+     * @return  the time in nanoseconds, or 0 if nothing has been rendered
+     */
+    public synchronized long getLastPaintNanos(){
+        return lastPaintNanos;
+    }
+
+    /**
+     * gets a short summary of the metrics, as shown in the drawing's overlay
+     * @return  the summary
+     */
+    public String summary(){
+        return String.format("gen %.1f/%.1f ms  paint %.1f/%.1f ms  latency %.1f/%.1f ms  "
+                        + "frame %.1f ms  %,d branches  %,d KB",
+                getGenerationMillisP50(), getGenerationMillisP99(), getPaintMillisP50(),
+                getPaintMillisP99(), getLatencyMillisP50(), getLatencyMillisP99(),
+                getFrameIntervalMillisP50(), getLastBranchCount(), getLastAllocatedBytes() / 1024);
+    }
+
+    /**
+     * gets the number of fractals published since the metrics were last reset
+     * @return  the number of updates
+     */
+    @Override
+    public synchronized long getUpdates(){
+        return updates;
+    }
+
+    /**
+     * gets the number of branches in the last published fractal
+     * @return  the number of branches
+     */
+    @Override
+    public synchronized int getLastBranchCount(){
+        return lastBranchCount;
+    }
+
+    /**
+     * gets the bytes the generating thread allocated for the last published fractal
+     * @return  the bytes allocated
+     */
+    @Override
+    public synchronized long getLastAllocatedBytes(){
+        return lastAllocatedBytes;
+    }
+
+    /**
+     * gets the median time from a build starting to its fractal being published
+     * @return  the median generation time in milliseconds
+     */
+    @Override
+    public double getGenerationMillisP50(){
+        return millis(generation.percentile(50));
+    }
+
+    /**
+     * gets the 99th percentile time from a build starting to its fractal being published
+     * @return  the 99th percentile generation time in milliseconds
+     */
+    @Override
+    public double getGenerationMillisP99(){
+        return millis(generation.percentile(99));
+    }
+
+    /**
+     * gets the median bytes allocated per published fractal
+     * @return  the median bytes allocated
+     */
+    @Override
+    public long getAllocatedBytesP50(){
+        return allocated.percentile(50);
+    }
+
+    /**
+     * gets the 99th percentile bytes allocated per published fractal
+     * @return  the 99th percentile bytes allocated
+     */
+    @Override
+    public long getAllocatedBytesP99(){
+        return allocated.percentile(99);
+    }
+
+    /**
+     * gets the median time to render a published fractal into the drawing's image
+     * @return  the median paint time in milliseconds
+     */
+    @Override
+    public double getPaintMillisP50(){
+        return millis(paint.percentile(50));
+    }
+
+    /**
+     * gets the 99th percentile time to render a published fractal into the drawing's image
+     * @return  the 99th percentile paint time in milliseconds
+     */
+    @Override
+    public double getPaintMillisP99(){
+        return millis(paint.percentile(99));
+    }
+
+    /**
+     * gets the median time from options being set to their fractal being on screen
+     * @return  the median latency in milliseconds
+     */
+    @Override
+    public double getLatencyMillisP50(){
+        return millis(latency.percentile(50));
+    }
+
+    /**
+     * gets the 99th percentile time from options being set to their fractal being on screen
+     * @return  the 99th percentile latency in milliseconds
+     */
+    @Override
+    public double getLatencyMillisP99(){
+        return millis(latency.percentile(99));
+    }
+
+    /**
+     * gets the median time between two new fractals reaching the screen
+     * @return  the median frame interval in milliseconds
+     */
+    @Override
+    public double getFrameIntervalMillisP50(){
+        return millis(frameInterval.percentile(50));
+    }
+
+    /**
+     * gets the 99th percentile time between two new fractals reaching the screen
+     * @return  the 99th percentile frame interval in milliseconds
+     */
+    @Override
+    public double getFrameIntervalMillisP99(){
+        return millis(frameInterval.percentile(99));
+    }
+
+    /**
+     * clears every histogram and counter
+     */
+    @Override
+    public void reset(){
+        generation.clear();
+        paint.clear();
+        latency.clear();
+        frameInterval.clear();
+        allocated.clear();
+        synchronized (this) {
+            updates = 0;
+            lastBranchCount = 0;
+            lastAllocatedBytes = 0;
+            paintedVersion = -1;
+            lastPaintNanos = 0;
+        }
+    }
+
+    /**
+     * converts nanoseconds to milliseconds
+     * @param nanos     the time in nanoseconds
+     * @return          the time in milliseconds
+     */
+    private static double millis(long nanos){
+        return nanos / 1e6;
+    }
+}
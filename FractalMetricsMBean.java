@@ -0,0 +1,90 @@
+/**
+ * management interface for FractalMetrics, which exposes the metrics as JMX attributes.
+ * Percentiles are taken over the most recent updates only
+ * @author Gwen Tait
+ * @version 10-17-26
+ */
+public interface FractalMetricsMBean {
+    /**
+     * gets the number of fractals published since the metrics were last reset
+     * @return  the number of updates
+     */
+    long getUpdates();
+
+    /**
+     * gets the number of branches in the last published fractal
+     * @return  the number of branches
+     */
+    int getLastBranchCount();
+
+    /**
+     * gets the bytes the generating thread allocated for the last published fractal
+     * @return  the bytes allocated
+     */
+    long getLastAllocatedBytes();
+
+    /**
+     * gets the median time from a build starting to its fractal being published
+     * @return  the median generation time in milliseconds
+     */
+    double getGenerationMillisP50();
+
+    /**
+     * gets the 99th percentile time from a build starting to its fractal being published
+     * @return  the 99th percentile generation time in milliseconds
+     */
+    double getGenerationMillisP99();
+
+    /**
+     * gets the median bytes allocated per published fractal
+     * @return  the median bytes allocated
+     */
+    long getAllocatedBytesP50();
+
+    /**
+     * gets the 99th percentile bytes allocated per published fractal
+     * @return  the 99th percentile bytes allocated
+     */
+    long getAllocatedBytesP99();
+
+    /**
+     * gets the median time to render a published fractal into the drawing's image
+     * @return  the median paint time in milliseconds
+     */
+    double getPaintMillisP50();
+
+    /**
+     * gets the 99th percentile time to render a published fractal into the drawing's image
+     * @return  the 99th percentile paint time in milliseconds
+     */
+    double getPaintMillisP99();
+
+    /**
+     * gets the median time from options being set to their fractal being on screen
+     * @return  the median latency in milliseconds
+     */
+    double getLatencyMillisP50();
+
+    /**
+     * gets the 99th percentile time from options being set to their fractal being on screen
+     * @return  the 99th percentile latency in milliseconds
+     */
+    double getLatencyMillisP99();
+
+    /**
+     * gets the median time between two new fractals reaching the screen
+     * @return  the median frame interval in milliseconds
+     */
+    double getFrameIntervalMillisP50();
+
+    /**
+     * gets the 99th percentile time between two new fractals reaching the screen
+     * @return  the 99th percentile frame interval in milliseconds
+     */
+    double getFrameIntervalMillisP99();
+
+    /**
+     * clears every histogram and counter
+     */
+    void reset();
+}
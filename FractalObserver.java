@@ -8,4 +8,23 @@ public interface FractalObserver{
      * what happens when an observer is notified
      */
     void update();
+
+    /**
+     * what happens when a completed fractal is published. Subjects may call this from a
+     * background thread. By default the snapshot is ignored and update() is called so the
+     * observer can pull from the subject instead.
+     * @param snapshot  the published fractal
+     */
+    default void update(FractalSnapshot snapshot){
+        update();
+    }
+
+    /**
+     * what happens when part of a fractal that is still being generated is streamed. Subjects
+     * call this on the thread that is generating, and the chunk's branches are only valid until
+     * this returns. By default chunks are ignored and only the completed snapshot is used.
+     * @param chunk     the streamed branches
+     */
+    default void update(FractalChunk chunk){
+    }
 }
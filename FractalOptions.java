@@ -0,0 +1,50 @@
+import java.awt.*;
+
+/**
+ * record for a set of fractal options, as passed to FractalSubject.setOptions()
+ * @author Gwen Tait
+ * @version 10-17-26
+ *
+ *
+ * @param recDepth      the number of recursions to make
+ * @param ratio         the ratio of a child's branch width and length to its parent, as a whole number
+ * @param lChAngle      the angle to put the left branch at, in degrees
+ * @param rChAngle      the angle to put the right branch at, in degrees
+ * @param trunkLength   the length of the starting branch
+ * @param trunkWidth    the width of the starting branch
+ * @param trunkColor    the starting color of the first branch
+ * @param leafColor     the ending color of the final branches
+ */
+public record FractalOptions(int recDepth, int ratio, int lChAngle, int rChAngle,
+                             int trunkLength, int trunkWidth, Color trunkColor, Color leafColor) {
+    /**
+     * checks whether the passed options put every branch in the same place as these options on
+     * the levels both trees have. Depth, width and colors never move a branch.
+     * @param other     the options to compare with
+     * @return          true if the branches on shared levels are in the same place
+     */
+    public boolean sameShape(FractalOptions other){
+        return ratio == other.ratio && lChAngle == other.lChAngle && rChAngle == other.rChAngle
+                && trunkLength == other.trunkLength;
+    }
+
+    /**
+     * gets a copy of these options with another recursion depth
+     * @param depth     the recursion depth of the copy
+     * @return          the copied options
+     */
+    public FractalOptions withDepth(int depth){
+        return new FractalOptions(depth, ratio, lChAngle, rChAngle, trunkLength, trunkWidth,
+                trunkColor, leafColor);
+    }
+
+    /**
+     * gets a copy of these options in a canonical form, so that option sets which generate the
+     * same fractal are equal. The generator ignores alpha, so colors are made opaque.
+     * @return      the normalized options
+     */
+    public FractalOptions normalized(){
+        return new FractalOptions(recDepth, ratio, lChAngle, rChAngle, trunkLength, trunkWidth,
+                new Color(trunkColor.getRGB() & 0xFFFFFF), new Color(leafColor.getRGB() & 0xFFFFFF));
+    }
+}
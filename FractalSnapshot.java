@@ -0,0 +1,42 @@
+import java.awt.*;
+
+/**
+ * record for a completed fractal published by a FractalSubject. The generator may reuse the
+ * branch buffer for a later version, so the branches should only be read while synchronized
+ * on the buffer, which draw() does
+ * @author Gwen Tait
+ * @version 10-17-26
+ *
+ *
+ * @param version   the version number of the snapshot, increasing with every publish
+ * @param options   the options the fractal was generated with
+ * @param view      the part of the canvas the fractal was generated for
+ * @param branches  the generated branches
+ * @param index     the spatial index over the branches, or null if they were not indexed
+ */
+public record FractalSnapshot(long version, FractalOptions options, FractalView view,
+                              BranchBuffer branches, BranchIndex index)
+        implements FractalElement {
+    /**
+     * constructs a snapshot of branches which were not indexed
+     * @param version   the version number of the snapshot
+     * @param options   the options the fractal was generated with
+     * @param view      the part of the canvas the fractal was generated for
+     * @param branches  the generated branches
+     */
+    public FractalSnapshot(long version, FractalOptions options, FractalView view,
+                           BranchBuffer branches){
+        this(version, options, view, branches, null);
+    }
+
+    /**
+     * draws the branches while holding the buffer's lock, so a build reusing the
+     * buffer can never be drawn half finished
+     * @param g  the passed system graphics reference
+     */
+    public void draw(Graphics g){
+        synchronized (branches) {
+            branches.draw(g);
+        }
+    }
+}
@@ -8,7 +8,7 @@ import java.util.ArrayList;
  */
 public interface FractalSubject {
     /**
-     * Notifies observers that an update is available
+     * Notifies observers that an update is available by passing them the last published snapshot
      */
     void notifyObservers();
 
@@ -30,6 +30,25 @@ public interface FractalSubject {
      */
     ArrayList<FractalElement> getFractalElements();
 
+    /**
+     * gets the generated branches as a structure-of-arrays buffer, which avoids
+     * creating an object for every branch
+     * @return     the branch buffer holding the generated fractal
+     */
+    BranchBuffer getBranchBuffer();
+
+    /**
+     * gets the last completed fractal published to the observers
+     * @return     the snapshot, or null if nothing has been published yet
+     */
+    FractalSnapshot getSnapshot();
+
+    /**
+     * sets the part of the canvas that is shown and regenerates the fractal for it
+     * @param view  the view to generate for
+     */
+    void setView(FractalView view);
+
     /**
      * Sets the options of the fractal generator with the passed values
      * as the settings
@@ -0,0 +1,65 @@
+/**
+ * record for the part of the canvas that is shown, as passed to FractalSubject.setView(). The
+ * canvas point (x, y) is shown at the top left corner of the drawing, and the canvas is
+ * magnified by zoom, so a canvas point c is drawn at <code>(c - x) * zoom</code>.
+ * @author Gwen Tait
+ * @version 10-17-26
+ *
+ *
+ * @param zoom  how many times the canvas is magnified
+ * @param x     the x-coordinate of the canvas point shown at the left edge
+ * @param y     the y-coordinate of the canvas point shown at the top edge
+ */
+public record FractalView(double zoom, double x, double y) {
+    /**
+     * the view which shows the whole canvas without magnification
+     */
+    public static final FractalView DEFAULT = new FractalView(1, 0, 0);
+
+    /**
+     * the smallest zoom a view can be changed to with zoomAt()
+     */
+    public static final double MIN_ZOOM = 0.25;
+
+    /**
+     * the largest zoom a view can be changed to with zoomAt(), which keeps the coordinates of
+     * every visible branch well within int range
+     */
+    public static final double MAX_ZOOM = 1 << 16;
+
+    /**
+     * checks that the zoom is a positive number
+     * @param zoom  how many times the canvas is magnified
+     * @param x     the x-coordinate of the canvas point shown at the left edge
+     * @param y     the y-coordinate of the canvas point shown at the top edge
+     */
+    public FractalView {
+        if (!(zoom > 0) || Double.isInfinite(zoom)){
+            throw new IllegalArgumentException("Zoom must be a positive number");
+        }
+    }
+
+    /**
+     * gets a view magnified by the passed factor, keeping the canvas point under the passed
+     * screen point in place. The zoom is kept between MIN_ZOOM and MAX_ZOOM
+     * @param factor    how many times to magnify the view, less than 1 to zoom out
+     * @param screenX   the x-coordinate on screen which stays in place
+     * @param screenY   the y-coordinate on screen which stays in place
+     * @return          the magnified view
+     */
+    public FractalView zoomAt(double factor, double screenX, double screenY){
+        double newZoom = Math.max(MIN_ZOOM, Math.min(zoom * factor, MAX_ZOOM));
+        return new FractalView(newZoom, x + screenX / zoom - screenX / newZoom,
+                y + screenY / zoom - screenY / newZoom);
+    }
+
+    /**
+     * gets a view moved by the passed distance on screen, so the canvas follows a drag
+     * @param screenDx  how far to move the canvas right, in screen pixels
+     * @param screenDy  how far to move the canvas down, in screen pixels
+     * @return          the moved view
+     */
+    public FractalView pan(double screenDx, double screenDy){
+        return new FractalView(zoom, x - screenDx / zoom, y - screenDy / zoom);
+    }
+}
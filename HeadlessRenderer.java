@@ -0,0 +1,354 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Headless entry point for the fractal program. Renders a single fractal to a PNG or SVG file of
+ * any size without opening a window. The tree is generated for the requested size, so its branches
+ * keep full precision, and the image is rendered and written one band of rows at a time, so even
+ * a 16K image only ever needs one band of pixels in memory.
+ *
+ * <pre>
+ * java HeadlessRenderer --size 15360x8640 --out fractal.png [--depth 12] [--ratio 60]
+ *     [--left 45] [--right 45] [--length 250] [--width 25] [--trunk-color #0000FF]
+ *     [--leaf-color #00FF00] [--band 256] [--java2d] [--save fractal.frct]
+ *     [--svg fractal.svg] [--dpi 96] [--print-dpi 300]
+ * java HeadlessRenderer --load fractal.frct --out fractal.png [--band 256] [--java2d]
+ *     [--svg fractal.svg] [--dpi 96] [--print-dpi 300]
+ * </pre>
+ * Length and width are given for the 1000 by 800 window, like the sliders in the GUI, and are
+ * scaled to the output size. --save also writes the generated branches to a fractal file, and
+ * --load renders a fractal file at the size it was generated for instead of generating one.
+ * --svg writes the fractal as vector paths, sized for printing the canvas at --dpi pixels per
+ * inch, leaving out branches shorter than one dot on a --print-dpi printer. At least one of
+ * --out, --save and --svg must be given.
+ *
+ * @author Gwen Tait
+ * @version 10-17-26
+ */
+public class HeadlessRenderer {
+    /**
+     * the number of rows rendered at a time unless --band is given
+     */
+    public static final int DEFAULT_BAND_HEIGHT = 256;
+
+    /**
+     * the width and height of a tile for the tiled rasterizer, in pixels
+     */
+    private static final int TILE_SIZE = 64;
+
+    /**
+     * the level at which parallel generation stops splitting the tree into tasks
+     */
+    private static final int PARALLEL_CUTOFF_DEPTH = 8;
+
+    /**
+     * the shortest branch worth generating, in pixels
+     */
+    private static final double MIN_BRANCH_LENGTH = 1;
+
+    /**
+     * main method for headless rendering. Parses the options, generates the fractal for the
+     * output size and writes it as a PNG
+     * @param args  the command line options, see the class comment
+     */
+    public static void main(String[] args){
+        System.setProperty("java.awt.headless", "true");
+        Map<String, String> opts;
+        int[] size = null;
+        FractalOptions options = null;
+        int bandHeight;
+        double dpi;
+        double printDpi;
+        try {
+            opts = parseArgs(args);
+            if (!opts.containsKey("load")){
+                size = parseSize(require(opts, "size"));
+                options = parseOptions(opts);
+            }
+            bandHeight = parseInt(opts.getOrDefault("band", "" + DEFAULT_BAND_HEIGHT), "band");
+            if (bandHeight < 1){
+                throw new IllegalArgumentException("Band height must be at least 1");
+            }
+            dpi = parseDouble(opts.getOrDefault("dpi", "" + SvgStreamWriter.DEFAULT_DPI), "dpi");
+            printDpi = parseDouble(opts.getOrDefault("print-dpi", "0"), "print-dpi");
+            if (!(dpi > 0)){
+                throw new IllegalArgumentException("Resolution must be positive");
+            }
+            if (!(printDpi >= 0)){
+                throw new IllegalArgumentException("Print resolution must not be negative");
+            }
+            if (!opts.containsKey("save") && !opts.containsKey("svg")){
+                require(opts, "out");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("usage: java HeadlessRenderer --size WIDTHxHEIGHT --out FILE.png"
+                    + " [--depth 12] [--ratio 60] [--left 45] [--right 45] [--length 250]"
+                    + " [--width 25] [--trunk-color #0000FF] [--leaf-color #00FF00]"
+                    + " [--band 256] [--java2d] [--save FILE.frct] [--svg FILE.svg] [--dpi 96]"
+                    + " [--print-dpi 300]");
+            System.err.println("       java HeadlessRenderer --load FILE.frct --out FILE.png"
+                    + " [--band 256] [--java2d] [--svg FILE.svg] [--dpi 96] [--print-dpi 300]");
+            System.exit(2);
+            return;
+        }
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        FractalSnapshot snapshot;
+        if (opts.containsKey("load")){
+            Path in = Path.of(opts.get("load"));
+            try {
+                MappedFractal fractal = FractalFile.open(in);
+                BranchBuffer branches = new BranchBuffer(0);
+                fractal.copyTo(branches);
+                snapshot = new FractalSnapshot(0, fractal.options(), FractalView.DEFAULT, branches);
+                size = new int[]{fractal.width(), fractal.height()};
+            } catch (IOException e) {
+                System.err.println("Could not read " + in + ": " + e.getMessage());
+                System.exit(1);
+                return;
+            }
+        } else {
+            FractalGenerator generator = new FractalGenerator(threads, PARALLEL_CUTOFF_DEPTH);
+            generator.setCanvas(size[0], size[1]);
+            generator.setViewport(new Rectangle(0, 0, size[0], size[1]));
+            generator.setLevelOfDetail(MIN_BRANCH_LENGTH);
+            generator.setOptions(options.recDepth(), options.ratio(), options.lChAngle(),
+                    options.rChAngle(), options.trunkLength(), options.trunkWidth(),
+                    options.trunkColor(), options.leafColor());
+            snapshot = generator.getSnapshot();
+        }
+
+        if (opts.containsKey("save")){
+            Path save = Path.of(require(opts, "save"));
+            try {
+                FractalFile.write(save, snapshot.options(), size[0], size[1], snapshot.branches());
+            } catch (IOException e) {
+                System.err.println("Could not write " + save + ": " + e.getMessage());
+                System.exit(1);
+            }
+        }
+        if (opts.containsKey("svg")){
+            Path svg = Path.of(require(opts, "svg"));
+            try (Writer out = Files.newBufferedWriter(svg, StandardCharsets.UTF_8);
+                 SvgStreamWriter writer = new SvgStreamWriter(out, size[0], size[1], dpi)) {
+                writer.setPrintResolution(printDpi);
+                writer.write(snapshot);
+            } catch (IOException e) {
+                System.err.println("Could not write " + svg + ": " + e.getMessage());
+                System.exit(1);
+            }
+        }
+        if (!opts.containsKey("out")){
+            return;
+        }
+
+        TiledRasterizer rasterizer = opts.containsKey("java2d") ? null
+                : new TiledRasterizer(threads, TILE_SIZE);
+        Path out = Path.of(require(opts, "out"));
+        try (OutputStream stream = new BufferedOutputStream(Files.newOutputStream(out))) {
+            writePng(snapshot, size[0], size[1], bandHeight, rasterizer, stream);
+        } catch (IOException e) {
+            System.err.println("Could not write " + out + ": " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * renders a snapshot band by band and streams it to a PNG. The snapshot should have been
+     * generated for a canvas of the same size. When rendering with Graphics, the branches are
+     * indexed first so each band only draws the branches crossing it
+     * @param snapshot      the fractal to render
+     * @param width         the width of the image in pixels
+     * @param height        the height of the image in pixels
+     * @param bandHeight    the number of rows to render at a time
+     * @param rasterizer    the rasterizer to render with, or null to render with Graphics
+     * @param out           the stream to write the PNG to, closed once the image is written
+     * @throws IOException if the image can not be written
+     */
+    public static void writePng(FractalSnapshot snapshot, int width, int height, int bandHeight,
+                                TiledRasterizer rasterizer, OutputStream out) throws IOException {
+        if (bandHeight < 1){
+            throw new IllegalArgumentException("Band height must be at least 1");
+        }
+        bandHeight = Math.min(bandHeight, height);
+        BufferedImage band = new BufferedImage(width, bandHeight, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) band.getRaster().getDataBuffer()).getData();
+        BatchedRenderer renderer = new BatchedRenderer();
+        BranchBuffer branches = snapshot.branches();
+        if (rasterizer == null && snapshot.index() == null && bandHeight < height){
+            synchronized (branches) {
+                snapshot = new FractalSnapshot(snapshot.version(), snapshot.options(), snapshot.view(),
+                        branches, new BranchIndex(branches));
+            }
+        }
+
+        try (PngStreamWriter png = new PngStreamWriter(out, width, height)) {
+            for (int top = 0; top < height; top += bandHeight) {
+                int rows = Math.min(bandHeight, height - top);
+                synchronized (branches) {
+                    if (rasterizer != null){
+                        rasterizer.render(branches, pixels, width, rows, 0, top, Color.BLACK.getRGB());
+                    } else {
+                        Graphics2D g2d = band.createGraphics();
+                        try {
+                            g2d.setColor(Color.BLACK);
+                            g2d.fillRect(0, 0, width, rows);
+                            g2d.clipRect(0, 0, width, rows);
+                            g2d.translate(0, -top);
+                            renderer.draw(g2d, snapshot);
+                        } finally {
+                            g2d.dispose();
+                        }
+                    }
+                }
+                png.writeRows(pixels, rows);
+            }
+        }
+    }
+
+    /**
+     * reads setOptions()-style parameters from parsed options, using the GUI's defaults for any
+     * that are missing. The depth must be between 1 and FractalGenerator.MAX_DEPTH, the ratio
+     * below 100 so branches shrink, the angles between 0 and 180, the length at least 1 and the
+     * width at least 0
+     * @param opts  the parsed options
+     * @return      the fractal options
+     */
+    static FractalOptions parseOptions(Map<String, String> opts){
+        int depth = parseInt(opts.getOrDefault("depth", "12"), "depth");
+        int ratio = parseInt(opts.getOrDefault("ratio", "60"), "ratio");
+        int left = parseInt(opts.getOrDefault("left", "45"), "left");
+        int right = parseInt(opts.getOrDefault("right", "45"), "right");
+        int length = parseInt(opts.getOrDefault("length", "250"), "length");
+        int width = parseInt(opts.getOrDefault("width", "25"), "width");
+        if (depth < 1 || depth > FractalGenerator.MAX_DEPTH){
+            throw new IllegalArgumentException("Depth must be between 1 and "
+                    + FractalGenerator.MAX_DEPTH);
+        }
+        if (ratio < 1 || ratio > 99){
+            throw new IllegalArgumentException("Ratio must be between 1 and 99");
+        }
+        if (left < 0 || left > 180 || right < 0 || right > 180){
+            throw new IllegalArgumentException("Left and right angles must be between 0 and 180");
+        }
+        if (length < 1){
+            throw new IllegalArgumentException("Length must be at least 1");
+        }
+        if (width < 0){
+            throw new IllegalArgumentException("Width may not be negative");
+        }
+        return new FractalOptions(depth, ratio, left, right, length, width,
+                parseColor(opts.getOrDefault("trunk-color", "#0000FF"), "trunk-color"),
+                parseColor(opts.getOrDefault("leaf-color", "#00FF00"), "leaf-color"));
+    }
+
+    /**
+     * parses a whole number option
+     * @param value     the value to parse
+     * @param name      the name of the option, for the error message
+     * @return          the number
+     */
+    static int parseInt(String value, String name){
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + value);
+        }
+    }
+
+    /**
+     * parses a decimal number option
+     * @param value     the value to parse
+     * @param name      the name of the option, for the error message
+     * @return          the number
+     */
+    private static double parseDouble(String value, String name){
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + value);
+        }
+    }
+
+    /**
+     * parses a color option such as #00FF00
+     * @param value     the value to parse
+     * @param name      the name of the option, for the error message
+     * @return          the color
+     */
+    private static Color parseColor(String value, String name){
+        try {
+            return Color.decode(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name
+                    + ", expected a color like #00FF00: " + value);
+        }
+    }
+
+    /**
+     * parses a WIDTHxHEIGHT size
+     * @param size  the size to parse
+     * @return      the width and height
+     */
+    static int[] parseSize(String size){
+        String[] parts = size.toLowerCase().split("x");
+        try {
+            if (parts.length == 2){
+                int width = Integer.parseInt(parts[0]);
+                int height = Integer.parseInt(parts[1]);
+                if (width > 0 && height > 0){
+                    return new int[]{width, height};
+                }
+            }
+        } catch (NumberFormatException e) {
+            //fall through to the error below
+        }
+        throw new IllegalArgumentException("Invalid size: " + size);
+    }
+
+    /**
+     * parses "--name value" pairs. Flags without a value, like --java2d, map to an empty string
+     * @param args  the command line arguments
+     * @return      the options by name, without the leading dashes
+     */
+    static Map<String, String> parseArgs(String[] args){
+        Map<String, String> opts = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")){
+                throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            }
+            String name = args[i].substring(2);
+            if (i + 1 < args.length && !args[i + 1].startsWith("--")){
+                opts.put(name, args[++i]);
+            } else {
+                opts.put(name, "");
+            }
+        }
+        return opts;
+    }
+
+    /**
+     * gets a required option
+     * @param opts  the parsed options
+     * @param name  the name of the option
+     * @return      the value of the option
+     */
+    private static String require(Map<String, String> opts, String name){
+        String value = opts.get(name);
+        if (value == null || value.isEmpty()){
+            throw new IllegalArgumentException("Missing --" + name);
+        }
+        return value;
+    }
+}
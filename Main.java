@@ -1,3 +1,6 @@
+import javax.swing.*;
+import java.awt.*;
+
 /**
  * Main method for the fractal program. Creates a drawing of a fractal which can be manipulated
  * by user input through a GUI
@@ -6,14 +9,155 @@
  * @version 12-3-24
  */
 public class Main {
+    /**
+     * the level at which parallel generation stops splitting the tree into tasks
+     */
+    private static final int PARALLEL_CUTOFF_DEPTH = 8;
+
+    /**
+     * the most memory the cache of previously generated fractals may use, in bytes
+     */
+    private static final long CACHE_BYTES = 128L * 1024 * 1024;
+
+    /**
+     * the width and height of a tile for the tiled rasterizer, in pixels
+     */
+    private static final int TILE_SIZE = 64;
+
+    /**
+     * the shortest branch worth generating, in pixels
+     */
+    private static final double MIN_BRANCH_LENGTH = 1;
+
+    /**
+     * the most branches streamed to the drawing at a time while a fractal is generated
+     */
+    private static final int STREAM_CHUNK_SIZE = 1 << 14;
+
+    /**
+     * the frame rate of the animation shown with --animate
+     */
+    private static final int ANIMATION_FPS = 30;
+
     /**
      *  main method for the fractal program. instantiates a generator, gui, and drawing to display
      *  the fractal
-     * @param args any command line arguments
+     * @param args any command line arguments. Passing --tiled renders with the multi-threaded
+     *             software rasterizer instead of Graphics, --animate shows the fractal
+     *             sweeping through its angles and ratio instead of opening the GUI, and
+     *             --metrics draws generation and paint times over the fractal. The times
+     *             are always available over JMX. Passing --children followed by a number
+     *             grows the fractal with the rule generator, fanning every branch into that
+     *             many children between the two child angles. Passing --stream shows the
+     *             shallow levels while the rest is generated, at the cost of generating
+     *             level by level on one thread instead of in parallel
      */
     public static void main(String[] args){
-        FractalSubject subj = new FractalGenerator();
+        boolean tiled = false;
+        boolean animate = false;
+        boolean overlay = false;
+        boolean stream = false;
+        int children = 0;
+        for (int i = 0; i < args.length; i++) {
+            tiled |= args[i].equals("--tiled");
+            animate |= args[i].equals("--animate");
+            overlay |= args[i].equals("--metrics");
+            stream |= args[i].equals("--stream");
+            if (args[i].equals("--children") && i + 1 < args.length){
+                try {
+                    children = Integer.parseInt(args[++i]);
+                } catch (NumberFormatException e) {
+                    children = -1;
+                }
+                if (children < 1 || children > RuleSet.MAX_CHILDREN){
+                    System.err.println("--children must be a number between 1 and "
+                            + RuleSet.MAX_CHILDREN);
+                    System.exit(2);
+                    return;
+                }
+            }
+        }
+        FractalMetrics metrics = new FractalMetrics();
+        metrics.register("main");
+        if (animate){
+            animate(tiled, metrics, overlay);
+            return;
+        }
+        if (children > 0){
+            showRules(children, tiled);
+            return;
+        }
+
+        FractalGenerator subj = new FractalGenerator(Runtime.getRuntime().availableProcessors(),
+                PARALLEL_CUTOFF_DEPTH);
+        subj.setCache(new FractalCache(0, CACHE_BYTES));
+        subj.setViewport(new Rectangle(0, 0, FractalGenerator.CANVAS_WIDTH,
+                FractalGenerator.CANVAS_HEIGHT));
+        subj.setLevelOfDetail(MIN_BRANCH_LENGTH);
+        if (stream){
+            subj.setStreaming(STREAM_CHUNK_SIZE);
+        }
+        subj.setAsynchronous(true);
+        subj.setMetrics(metrics);
         new FractalGui(subj);
-        new FractalDrawing(subj);
+        FractalDrawing drawing = new FractalDrawing(subj);
+        drawing.setMetrics(metrics, overlay);
+        if (tiled){
+            drawing.setRasterizer(new TiledRasterizer(Runtime.getRuntime().availableProcessors(),
+                    TILE_SIZE));
+        }
+    }
+
+    /**
+     * opens the GUI on a rule generator, which grows the fractal in the background but neither
+     * caches nor streams. Trees too big for the rule generator's branch budget are grown fewer
+     * levels deep
+     * @param children  the number of children every branch grows
+     * @param tiled     whether to render with the multi-threaded software rasterizer
+     */
+    private static void showRules(int children, boolean tiled){
+        RuleGenerator subj = new RuleGenerator(children);
+        subj.setViewport(new Rectangle(0, 0, FractalGenerator.CANVAS_WIDTH,
+                FractalGenerator.CANVAS_HEIGHT));
+        subj.setLevelOfDetail(MIN_BRANCH_LENGTH);
+        subj.setAsynchronous(true);
+        new FractalGui(subj);
+        FractalDrawing drawing = new FractalDrawing(subj);
+        if (tiled){
+            drawing.setRasterizer(new TiledRasterizer(Runtime.getRuntime().availableProcessors(),
+                    TILE_SIZE));
+        }
+    }
+
+    /**
+     * shows an animation of the fractal without the GUI. Frames are generated on the animator's
+     * thread, so the generator neither caches nor generates in the background
+     * @param tiled     whether to render with the multi-threaded software rasterizer
+     * @param metrics   the metrics to record in
+     * @param overlay   whether to draw the metrics over the fractal
+     */
+    private static void animate(boolean tiled, FractalMetrics metrics, boolean overlay){
+        FractalGenerator subj = new FractalGenerator(Runtime.getRuntime().availableProcessors(),
+                PARALLEL_CUTOFF_DEPTH);
+        subj.setViewport(new Rectangle(0, 0, FractalGenerator.CANVAS_WIDTH,
+                FractalGenerator.CANVAS_HEIGHT));
+        subj.setLevelOfDetail(MIN_BRANCH_LENGTH);
+        subj.setMetrics(metrics);
+        FractalDrawing drawing = new FractalDrawing(subj);
+        //the drawing is the only window, so closing it ends the program
+        drawing.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        drawing.setMetrics(metrics, overlay);
+        if (tiled){
+            drawing.setRasterizer(new TiledRasterizer(Runtime.getRuntime().availableProcessors(),
+                    TILE_SIZE));
+        }
+
+        FractalAnimator animator = new FractalAnimator(subj, new FractalOptions(16, 65, 45, 45,
+                250, 25, Color.BLUE, Color.GREEN), ANIMATION_FPS);
+        animator.sweepLeftAngle(15, 75, 8);
+        animator.sweepRightAngle(75, 15, 11);
+        animator.sweepRatio(55, 72, 13);
+        animator.setMetrics(metrics);
+        animator.start();
     }
 }
@@ -0,0 +1,186 @@
+import java.awt.*;
+import java.awt.geom.Path2D;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import static java.awt.BasicStroke.*;
+
+/**
+ * a fractal read from a file with FractalFile.open(). The branches stay in the memory-mapped
+ * file and are read through views of its columns, so opening a large fractal costs nothing and
+ * it can be drawn straight from the mapping. copyTo() fills a branch buffer with bulk copies
+ * for the renderers that work on arrays.
+ * @author Gwen Tait
+ * @version 10-17-26
+ */
+public class MappedFractal implements FractalElement {
+    /**
+     * the most segments to collect into one path before drawing it
+     */
+    private static final int MAX_SEGMENTS_PER_PATH = 1 << 16;
+
+    /**
+     * the options the fractal was generated with
+     */
+    private final FractalOptions options;
+
+    /**
+     * the size of the canvas the fractal was generated for
+     */
+    private final int width, height;
+
+    /**
+     * the number of branches
+     */
+    private final int size;
+
+    /**
+     * views of the coordinate and color columns in the mapping
+     */
+    private final IntBuffer x1, y1, x2, y2, color;
+
+    /**
+     * view of the width column in the mapping
+     */
+    private final FloatBuffer widths;
+
+    /**
+     * view of the level column in the mapping
+     */
+    private final ByteBuffer level;
+
+    /**
+     * constructs the views of a mapped file whose header has already been checked
+     * @param map       the mapped file
+     * @param options   the options read from the header
+     * @param width     the canvas width read from the header
+     * @param height    the canvas height read from the header
+     * @param size      the number of branches
+     */
+    MappedFractal(ByteBuffer map, FractalOptions options, int width, int height, int size){
+        this.options = options;
+        this.width = width;
+        this.height = height;
+        this.size = size;
+        int column = 4 * size;
+        int offset = FractalFile.HEADER_SIZE;
+        x1 = map.slice(offset, column).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        y1 = map.slice(offset += column, column).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        x2 = map.slice(offset += column, column).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        y2 = map.slice(offset += column, column).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        widths = map.slice(offset += column, column).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+        color = map.slice(offset += column, column).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        level = map.slice(offset + column, size);
+    }
+
+    /**
+     * gets the options the fractal was generated with
+     * @return  the options
+     */
+    public FractalOptions options(){
+        return options;
+    }
+
+    /**
+     * gets the width of the canvas the fractal was generated for
+     * @return  the width in pixels
+     */
+    public int width(){
+        return width;
+    }
+
+    /**
+     * gets the height of the canvas the fractal was generated for
+     * @return  the height in pixels
+     */
+    public int height(){
+        return height;
+    }
+
+    /**
+     * gets the number of branches
+     * @return  the number of branches
+     */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * fills a branch buffer with the branches, copying each column in bulk
+     * @param branches  the buffer to fill, grown if it is too small
+     */
+    public void copyTo(BranchBuffer branches){
+        branches.prepare(size);
+        x1.get(0, branches.x1, 0, size);
+        y1.get(0, branches.y1, 0, size);
+        x2.get(0, branches.x2, 0, size);
+        y2.get(0, branches.y2, 0, size);
+        widths.get(0, branches.width, 0, size);
+        color.get(0, branches.color, 0, size);
+        level.get(0, branches.level, 0, size);
+    }
+
+    /**
+     * draws the branches straight from the mapping, one path per level the way BatchedRenderer
+     * does. A level's path takes the width and color of its first branch, and a branch whose
+     * style differs from the rest of its level is drawn on its own
+     * @param g  the passed system graphics reference
+     */
+    public void draw(Graphics g){
+        Graphics2D g2d = (Graphics2D) g;
+        int levels = 0;
+        for (int i = 0; i < size; i++) {
+            levels = Math.max(levels, level.get(i) + 1);
+        }
+        Path2D.Float[] paths = new Path2D.Float[levels];
+        int[] segments = new int[levels];
+        int[] levelWidths = new int[levels];
+        int[] levelColors = new int[levels];
+        for (int i = 0; i < size; i++) {
+            int lvl = level.get(i);
+            if (lvl < 0){
+                i += x1.get(i) - 1;
+                continue;
+            }
+            int w = (int) widths.get(i);
+            int c = color.get(i);
+            if (paths[lvl] == null){
+                paths[lvl] = new Path2D.Float();
+                levelWidths[lvl] = w;
+                levelColors[lvl] = c;
+            } else if (levelWidths[lvl] != w || levelColors[lvl] != c){
+                g2d.setStroke(new BasicStroke(w, CAP_ROUND, JOIN_ROUND));
+                g2d.setColor(new Color(c, true));
+                g2d.drawLine(x1.get(i), y1.get(i), x2.get(i), y2.get(i));
+                continue;
+            }
+            paths[lvl].moveTo(x1.get(i), y1.get(i));
+            paths[lvl].lineTo(x2.get(i), y2.get(i));
+            if (++segments[lvl] == MAX_SEGMENTS_PER_PATH){
+                drawLevel(g2d, paths[lvl], levelWidths[lvl], levelColors[lvl]);
+                segments[lvl] = 0;
+            }
+        }
+        for (int lvl = 0; lvl < levels; lvl++) {
+            if (segments[lvl] > 0){
+                drawLevel(g2d, paths[lvl], levelWidths[lvl], levelColors[lvl]);
+            }
+        }
+    }
+
+    /**
+     * draws and resets the path of one level
+     * @param g2d       the graphics to draw with
+     * @param path      the collected branches of the level
+     * @param width     the width of the level's branches
+     * @param color     the packed ARGB color of the level's branches
+     */
+    private static void drawLevel(Graphics2D g2d, Path2D.Float path, int width, int color){
+        g2d.setStroke(new BasicStroke(width, CAP_ROUND, JOIN_ROUND));
+        g2d.setColor(new Color(color, true));
+        g2d.draw(path);
+        path.reset();
+    }
+}
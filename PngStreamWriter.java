@@ -0,0 +1,205 @@
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * writes a PNG image row by row, so an image far larger than the heap can be written from a
+ * small band of pixels at a time. Rows are stored as 8-bit RGB without filtering, compressed
+ * with a single deflate stream split over fixed-size IDAT chunks.
+ * @author Gwen Tait
+ * @version 10-17-26
+ */
+public class PngStreamWriter implements Closeable {
+    /**
+     * the bytes every PNG file starts with
+     */
+    private static final byte[] SIGNATURE = {(byte) 137, 80, 78, 71, 13, 10, 26, 10};
+
+    /**
+     * the most compressed bytes to put in one IDAT chunk
+     */
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    /**
+     * the stream the file is written to
+     */
+    private final OutputStream out;
+
+    /**
+     * the stream rows are compressed through, which writes IDAT chunks to out
+     */
+    private final DeflaterOutputStream deflater;
+
+    /**
+     * the deflater used for the image data
+     */
+    private final Deflater deflate;
+
+    /**
+     * the width of the image in pixels
+     */
+    private final int width;
+
+    /**
+     * the height of the image in pixels
+     */
+    private final int height;
+
+    /**
+     * one encoded row: the filter byte followed by the RGB bytes
+     */
+    private final byte[] row;
+
+    /**
+     * the number of rows written so far
+     */
+    private int rowsWritten;
+
+    /**
+     * starts a PNG image of the passed size by writing its header
+     * @param out       the stream to write to, closed when this writer is closed
+     * @param width     the width of the image in pixels
+     * @param height    the height of the image in pixels
+     * @throws IOException if the header can not be written
+     */
+    public PngStreamWriter(OutputStream out, int width, int height) throws IOException {
+        if (width < 1 || height < 1){
+            throw new IllegalArgumentException("Image size must be positive");
+        }
+        this.out = out;
+        this.width = width;
+        this.height = height;
+        this.row = new byte[1 + 3 * width];
+
+        out.write(SIGNATURE);
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        writeInt(header, width);
+        writeInt(header, height);
+        header.write(8);    //bit depth
+        header.write(2);    //color type RGB
+        header.write(0);    //compression
+        header.write(0);    //filter
+        header.write(0);    //no interlace
+        writeChunk("IHDR", header.toByteArray(), header.size());
+
+        deflate = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        deflater = new DeflaterOutputStream(new ChunkStream(), deflate, CHUNK_SIZE);
+    }
+
+    /**
+     * writes the next rows of the image
+     * @param pixels    the ARGB pixels of the rows, one row after another. Alpha is ignored
+     * @param rows      the number of rows to write
+     * @throws IOException if the rows can not be written
+     */
+    public void writeRows(int[] pixels, int rows) throws IOException {
+        if (rowsWritten + rows > height){
+            throw new IllegalStateException("More rows written than the image has");
+        }
+        for (int y = 0; y < rows; y++) {
+            int offset = y * width;
+            int b = 1;
+            for (int x = 0; x < width; x++) {
+                int argb = pixels[offset + x];
+                row[b++] = (byte) (argb >> 16);
+                row[b++] = (byte) (argb >> 8);
+                row[b++] = (byte) argb;
+            }
+            deflater.write(row);
+        }
+        rowsWritten += rows;
+    }
+
+    /**
+     * finishes the image data and writes the end of the file, then closes the stream
+     * @throws IOException if the image can not be finished
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (rowsWritten != height){
+                throw new IllegalStateException("Only " + rowsWritten + " of " + height
+                        + " rows were written");
+            }
+            deflater.finish();
+            writeChunk("IEND", new byte[0], 0);
+        } finally {
+            deflate.end();
+            out.close();
+        }
+    }
+
+    /**
+     * writes one chunk with its length and checksum
+     * @param type      the four letter chunk type
+     * @param data      the chunk data
+     * @param length    the number of bytes of data to write
+     * @throws IOException if the chunk can not be written
+     */
+    private void writeChunk(String type, byte[] data, int length) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+        writeInt(out, length);
+        out.write(typeBytes);
+        out.write(data, 0, length);
+        writeInt(out, (int) crc.getValue());
+    }
+
+    /**
+     * writes a big-endian int
+     * @param stream    the stream to write to
+     * @param value     the value to write
+     * @throws IOException if the value can not be written
+     */
+    private static void writeInt(OutputStream stream, int value) throws IOException {
+        stream.write(value >>> 24);
+        stream.write(value >>> 16);
+        stream.write(value >>> 8);
+        stream.write(value);
+    }
+
+    /**
+     * private helper class for PngStreamWriter which wraps everything the deflater
+     * writes into IDAT chunks
+     */
+    private class ChunkStream extends OutputStream {
+        /**
+         * writes a single byte as its own chunk. The deflater always writes whole
+         * blocks, so this is only here to complete OutputStream
+         * @param b     the byte to write
+         * @throws IOException if the chunk can not be written
+         */
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        /**
+         * writes a block of compressed data as one IDAT chunk
+         * @param b     the data
+         * @param off   the offset of the first byte to write
+         * @param len   the number of bytes to write
+         * @throws IOException if the chunk can not be written
+         */
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0){
+                return;
+            }
+            if (off == 0){
+                writeChunk("IDAT", b, len);
+            } else {
+                byte[] copy = new byte[len];
+                System.arraycopy(b, off, copy, 0, len);
+                writeChunk("IDAT", copy, len);
+            }
+        }
+    }
+}
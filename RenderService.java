@@ -0,0 +1,528 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * service entry point for the fractal program, serving fractals as PNG images over HTTP from one
+ * warm JVM. GET /render takes the same options as HeadlessRenderer as query parameters, such as
+ * /render?depth=14&amp;ratio=65&amp;leaf-color=%2300FF00, and GET /stats gives a summary of the
+ * requests served so far. Identical requests being rendered at the same time share one
+ * generation, and finished images are kept in a cache bounded by their total size. Only a
+ * bounded number of generations may wait for a worker; past that the service answers 503 with a
+ * Retry-After header instead of queueing more work, so latency stays bounded under overload.
+ *
+ * <pre>
+ * java RenderService [--port 8080] [--size 1000x800] [--threads 8] [--queue 32]
+ *     [--connections 64] [--cache-mb 64]
+ * </pre>
+ * The service only listens on the loopback address.
+ *
+ * @author Gwen Tait
+ * @version 10-17-26
+ */
+public class RenderService {
+    /**
+     * the port to listen on unless --port is given
+     */
+    public static final int DEFAULT_PORT = 8080;
+
+    /**
+     * the size of the images unless --size is given
+     */
+    public static final String DEFAULT_SIZE = "1000x800";
+
+    /**
+     * the deepest recursion a request may ask for, the same as the GUI's depth slider
+     */
+    public static final int MAX_DEPTH = 20;
+
+    /**
+     * the number of generations that may wait for a worker per thread unless --queue is given
+     */
+    private static final int QUEUE_PER_THREAD = 4;
+
+    /**
+     * the number of requests handled at once unless --connections is given
+     */
+    private static final int DEFAULT_CONNECTIONS = 64;
+
+    /**
+     * the size of the image cache in megabytes unless --cache-mb is given
+     */
+    private static final int DEFAULT_CACHE_MB = 64;
+
+    /**
+     * the number of request times kept for the percentiles in the stats
+     */
+    private static final int TIMING_WINDOW = 1 << 16;
+
+    /**
+     * the shortest branch worth generating, in pixels
+     */
+    private static final double MIN_BRANCH_LENGTH = 1;
+
+    /**
+     * whether the current thread is answering a connection the connection pool had no room for
+     */
+    private static final ThreadLocal<Boolean> OVERFLOW = ThreadLocal.withInitial(() -> false);
+
+    /**
+     * the size of the images in pixels
+     */
+    private final int width, height;
+
+    /**
+     * the workers not currently rendering an image, one per thread
+     */
+    private final BlockingQueue<Worker> workers;
+
+    /**
+     * the generations that may be started but not yet finished, which bounds the work waiting
+     * for a worker
+     */
+    private final Semaphore pending;
+
+    /**
+     * the images being rendered, so identical requests wait for the same generation
+     */
+    private final ConcurrentHashMap<FractalOptions, CompletableFuture<byte[]>> rendering =
+            new ConcurrentHashMap<>();
+
+    /**
+     * the finished images, in order from least to most recently used
+     */
+    private final LinkedHashMap<FractalOptions, byte[]> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * the largest total size of the cached images in bytes
+     */
+    private final long maxCacheBytes;
+
+    /**
+     * the total size of the cached images in bytes
+     */
+    private long cacheBytes;
+
+    /**
+     * the time each image request took from being handled to its response being sent, in
+     * nanoseconds
+     */
+    private final SlidingHistogram requestNanos = new SlidingHistogram(TIMING_WINDOW);
+
+    /**
+     * the number of image requests answered from the cache, by another request's generation,
+     * by their own generation, turned away for overload and failed
+     */
+    private final AtomicLong hits = new AtomicLong(), coalesced = new AtomicLong(),
+            generated = new AtomicLong(), rejected = new AtomicLong(), failed = new AtomicLong();
+
+    /**
+     * constructs a render service
+     * @param threads       the number of images to render at once, must be at least 1
+     * @param queue         the number of generations that may wait for a worker, at least 0
+     * @param width         the width of the images in pixels, must be at least 1
+     * @param height        the height of the images in pixels, must be at least 1
+     * @param maxCacheBytes the largest total size of the cached images in bytes, or 0 to not
+     *                      cache images
+     */
+    public RenderService(int threads, int queue, int width, int height, long maxCacheBytes){
+        if (threads < 1){
+            throw new IllegalArgumentException("Thread count must be at least 1");
+        }
+        if (queue < 0){
+            throw new IllegalArgumentException("Queue length may not be negative");
+        }
+        if (width < 1 || height < 1){
+            throw new IllegalArgumentException("Image size must be positive");
+        }
+        if (maxCacheBytes < 0){
+            throw new IllegalArgumentException("Cache size may not be negative");
+        }
+        this.width = width;
+        this.height = height;
+        this.maxCacheBytes = maxCacheBytes;
+        this.workers = new ArrayBlockingQueue<>(threads);
+        this.pending = new Semaphore(threads + queue);
+        for (int i = 0; i < threads; i++) {
+            workers.add(new Worker());
+        }
+    }
+
+    /**
+     * main method for the render service. Parses the options and serves images until the
+     * process is stopped
+     * @param args  the command line options, see the class comment
+     */
+    public static void main(String[] args){
+        System.setProperty("java.awt.headless", "true");
+        int port, threads, queue, connections;
+        long cacheBytes;
+        int[] size;
+        try {
+            Map<String, String> opts = HeadlessRenderer.parseArgs(args);
+            port = Integer.parseInt(opts.getOrDefault("port", "" + DEFAULT_PORT));
+            size = HeadlessRenderer.parseSize(opts.getOrDefault("size", DEFAULT_SIZE));
+            threads = Integer.parseInt(opts.getOrDefault("threads",
+                    "" + Runtime.getRuntime().availableProcessors()));
+            queue = Integer.parseInt(opts.getOrDefault("queue", "" + QUEUE_PER_THREAD * threads));
+            connections = Integer.parseInt(opts.getOrDefault("connections", "" + DEFAULT_CONNECTIONS));
+            cacheBytes = Long.parseLong(opts.getOrDefault("cache-mb", "" + DEFAULT_CACHE_MB)) << 20;
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("usage: java RenderService [--port " + DEFAULT_PORT + "] [--size "
+                    + DEFAULT_SIZE + "] [--threads N] [--queue N] [--connections N] [--cache-mb N]");
+            System.exit(2);
+            return;
+        }
+
+        RenderService service = new RenderService(threads, queue, size[0], size[1], cacheBytes);
+        try {
+            HttpServer server = service.start(port, connections);
+            System.out.println("Serving " + size[0] + "x" + size[1] + " fractals on http://"
+                    + server.getAddress().getHostString() + ":" + server.getAddress().getPort()
+                    + "/render");
+        } catch (IOException e) {
+            System.err.println("Could not listen on port " + port + ": " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * starts serving on the loopback address. Requests are handled on a pool of connection
+     * threads with a queue as long as the pool. A connection arriving while both are full is
+     * answered on the server's dispatcher thread, which only reads the request and sends back
+     * a 503 with a Retry-After header
+     * @param port          the port to listen on, or 0 for any free port
+     * @param connections   the number of requests to handle at once, must be at least 1
+     * @return              the started server, which can be stopped with stop()
+     * @throws IOException if the port can not be opened
+     */
+    public HttpServer start(int port, int connections) throws IOException {
+        if (connections < 1){
+            throw new IllegalArgumentException("Connection count must be at least 1");
+        }
+        HttpServer server = HttpServer.create(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), port), connections);
+        server.createContext("/render", this::handleRender);
+        server.createContext("/stats", this::handleStats);
+        server.setExecutor(new ThreadPoolExecutor(connections, connections, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(connections), (exchange, pool) -> answerOverflow(exchange)));
+        server.start();
+        return server;
+    }
+
+    /**
+     * runs a connection the connection pool rejected on the calling thread, marked so that
+     * its request is turned away instead of rendered
+     * @param exchange  the rejected connection
+     */
+    private static void answerOverflow(Runnable exchange){
+        OVERFLOW.set(true);
+        try {
+            exchange.run();
+        } finally {
+            OVERFLOW.set(false);
+        }
+    }
+
+    /**
+     * gets the PNG image for the passed options, from the cache, from a generation another
+     * caller already started, or by generating it on a worker
+     * @param options   the options to render
+     * @return          the PNG image, or null if too many generations are waiting for a worker
+     * @throws InterruptedException if interrupted while waiting for the image
+     * @throws ExecutionException if the image could not be rendered
+     */
+    public byte[] render(FractalOptions options) throws InterruptedException, ExecutionException {
+        FractalOptions key = options.normalized();
+        byte[] png = cached(key);
+        if (png != null){
+            hits.incrementAndGet();
+            return png;
+        }
+
+        CompletableFuture<byte[]> created = new CompletableFuture<>();
+        CompletableFuture<byte[]> future = rendering.putIfAbsent(key, created);
+        if (future != null){
+            coalesced.incrementAndGet();
+            return future.get();
+        }
+        //the image may have been cached between the lookup and claiming the generation
+        png = cached(key);
+        if (png != null){
+            rendering.remove(key);
+            created.complete(png);
+            hits.incrementAndGet();
+            return png;
+        }
+        if (!pending.tryAcquire()){
+            rendering.remove(key);
+            created.complete(null);
+            rejected.incrementAndGet();
+            return null;
+        }
+        try {
+            Worker worker = workers.take();
+            try {
+                png = worker.render(key);
+            } finally {
+                workers.add(worker);
+            }
+            cache(key, png);
+            generated.incrementAndGet();
+            created.complete(png);
+            return png;
+        } catch (RuntimeException | Error | InterruptedException e) {
+            created.completeExceptionally(e);
+            throw e;
+        } finally {
+            rendering.remove(key);
+            pending.release();
+        }
+    }
+
+    /**
+     * gets a summary of the requests served so far
+     * @return  the summary
+     */
+    public String summary(){
+        long cachedBytes;
+        int cachedImages;
+        synchronized (cache) {
+            cachedBytes = cacheBytes;
+            cachedImages = cache.size();
+        }
+        return String.format("%d cached, %d coalesced, %d generated, %d rejected, %d failed;"
+                        + " p50 %.1f ms, p99 %.1f ms; cache %d images, %.1f MB",
+                hits.get(), coalesced.get(), generated.get(), rejected.get(), failed.get(),
+                requestNanos.percentile(50) / 1e6, requestNanos.percentile(99) / 1e6,
+                cachedImages, cachedBytes / (double) (1 << 20));
+    }
+
+    /**
+     * answers a GET /render request with a PNG image, 400 for invalid options, 503 if the
+     * service or its connection pool is overloaded and 500 if the image could not be rendered
+     * @param exchange  the request
+     * @throws IOException if the response can not be sent
+     */
+    private void handleRender(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET")){
+                exchange.getResponseHeaders().set("Allow", "GET");
+                sendText(exchange, 405, "Only GET is supported");
+                return;
+            }
+            if (OVERFLOW.get()){
+                rejected.incrementAndGet();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                sendText(exchange, 503, "Too many requests are being handled");
+                return;
+            }
+            FractalOptions options;
+            try {
+                options = HeadlessRenderer.parseOptions(parseQuery(exchange.getRequestURI().getRawQuery()));
+                if (options.recDepth() < 1 || options.recDepth() > MAX_DEPTH){
+                    throw new IllegalArgumentException("Depth must be between 1 and " + MAX_DEPTH);
+                }
+            } catch (IllegalArgumentException e) {
+                sendText(exchange, 400, e.getMessage());
+                return;
+            }
+
+            byte[] png;
+            try {
+                png = render(options);
+            } catch (ExecutionException | RuntimeException e) {
+                failed.incrementAndGet();
+                sendText(exchange, 500, "Could not render: " + e);
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                sendText(exchange, 503, "Interrupted");
+                return;
+            }
+            if (png == null){
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                sendText(exchange, 503, "Too many fractals are being rendered");
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", "image/png");
+            exchange.sendResponseHeaders(200, png.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(png);
+            }
+            requestNanos.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * answers a GET /stats request with the summary
+     * @param exchange  the request
+     * @throws IOException if the response can not be sent
+     */
+    private void handleStats(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            sendText(exchange, 200, summary());
+        }
+    }
+
+    /**
+     * sends a plain text response
+     * @param exchange  the request to answer
+     * @param status    the HTTP status code
+     * @param text      the body of the response
+     * @throws IOException if the response can not be sent
+     */
+    private static void sendText(HttpExchange exchange, int status, String text) throws IOException {
+        byte[] body = (text + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * parses a URL query string of name=value pairs
+     * @param query     the raw query, or null if there is none
+     * @return          the decoded values by name
+     */
+    static Map<String, String> parseQuery(String query){
+        Map<String, String> params = new HashMap<>();
+        if (query == null || query.isEmpty()){
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            params.put(URLDecoder.decode(name, StandardCharsets.UTF_8),
+                    URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    /**
+     * looks up a finished image and marks it as most recently used
+     * @param key   the normalized options of the image
+     * @return      the PNG image, or null if it is not cached
+     */
+    private byte[] cached(FractalOptions key){
+        synchronized (cache) {
+            return cache.get(key);
+        }
+    }
+
+    /**
+     * adds a finished image to the cache, evicting the least recently used images until the
+     * cache fits its limit. An image bigger than the whole cache is not kept
+     * @param key   the normalized options of the image
+     * @param png   the PNG image
+     */
+    private void cache(FractalOptions key, byte[] png){
+        if (png.length > maxCacheBytes){
+            return;
+        }
+        synchronized (cache) {
+            byte[] old = cache.put(key, png);
+            cacheBytes += png.length - (old == null ? 0 : old.length);
+            Iterator<byte[]> eldest = cache.values().iterator();
+            while (cacheBytes > maxCacheBytes) {
+                cacheBytes -= eldest.next().length;
+                eldest.remove();
+            }
+        }
+    }
+
+    /**
+     * private helper class for RenderService holding everything needed to render one image.
+     * A worker is only used by one thread at a time and is kept while the service runs, so its
+     * generator's buffers, its image and its renderer's paths are reused from image to image
+     */
+    private class Worker {
+        /**
+         * the generator, which generates on the calling thread
+         */
+        private final FractalGenerator generator = new FractalGenerator();
+
+        /**
+         * the image each fractal is drawn into
+         */
+        private final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+
+        /**
+         * the pixels of the image
+         */
+        private final int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+
+        /**
+         * the renderer each fractal is drawn with
+         */
+        private final BatchedRenderer renderer = new BatchedRenderer();
+
+        /**
+         * the encoded image, reused for every fractal
+         */
+        private final ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+
+        /**
+         * constructs a worker whose generator fits the fractal to the image
+         */
+        Worker(){
+            generator.setCanvas(width, height);
+            generator.setViewport(new Rectangle(0, 0, width, height));
+            generator.setLevelOfDetail(MIN_BRANCH_LENGTH);
+        }
+
+        /**
+         * generates a fractal, draws it and encodes it as a PNG
+         * @param options   the options to generate with
+         * @return          the PNG image
+         */
+        byte[] render(FractalOptions options){
+            generator.setOptions(options.recDepth(), options.ratio(), options.lChAngle(),
+                    options.rChAngle(), options.trunkLength(), options.trunkWidth(),
+                    options.trunkColor(), options.leafColor());
+            Graphics2D g2d = image.createGraphics();
+            try {
+                g2d.setColor(Color.BLACK);
+                g2d.fillRect(0, 0, width, height);
+                renderer.draw(g2d, generator.getSnapshot());
+            } finally {
+                g2d.dispose();
+            }
+            encoded.reset();
+            try (PngStreamWriter png = new PngStreamWriter(encoded, width, height)) {
+                png.writeRows(pixels, height);
+            } catch (IOException e) {
+                //a byte array stream never fails to write
+                throw new IllegalStateException(e);
+            }
+            return encoded.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,927 @@
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * generator for fractals grown from a RuleSet, where every branch may grow any number of children
+ * with their own angles and ratios, some of them only by chance. Setting the rules compiles them
+ * into flat tables of child rotations, ratios and probabilities, and the tree is then grown level
+ * by level with plain loops over those tables, so growing a tree interprets no rules and
+ * allocates nothing once the buffers are big enough. Like FractalGenerator's level order, a
+ * child's direction is found by rotating its parent's direction, so trig functions are only
+ * called while compiling. Branches are stored level by level, trunk first, which is the order
+ * BatchedRenderer draws them in; for the two-child rule set of some options every level holds
+ * exactly the branches FractalGenerator generates. Before growing, the number of branches is
+ * estimated from the rules and the level of detail, and the tree is grown fewer levels deep if
+ * it would not fit the branch budget, so a few rules can not fill the heap.
+ * @author Gwen Tait
+ * @version 10-17-26
+ */
+public class RuleGenerator implements FractalSubject {
+    /**
+     * the most branches a tree may have, which keeps the buffer within a few gigabytes
+     */
+    public static final int MAX_BRANCHES = 1 << 26;
+
+    /**
+     * the branch budget used until setBranchBudget() is called, about a hundred megabytes per
+     * buffer
+     */
+    public static final int DEFAULT_BRANCH_BUDGET = 1 << 22;
+
+    /**
+     * the number of branches a buffer is first allocated for when the rules could grow more
+     */
+    private static final int INITIAL_CAPACITY = 1 << 16;
+
+    /**
+     * the number of angles a jittered child may be turned to, spread evenly over its jitter
+     */
+    private static final int JITTER_STEPS = 64;
+
+    /**
+     * how close a rotated coordinate offset has to be to a whole number before it is recomputed
+     * with Math.cos/Math.sin, the same as in FractalGenerator
+     */
+    private static final double TRUNCATION_EPSILON = 1e-6;
+
+    /**
+     * the starting angle for the first branch
+     */
+    private static final double STARTING_ANGLE = Math.PI / 2;
+
+    /**
+     * the number of children setOptions() fans every branch into
+     */
+    private final int children;
+
+    /**
+     * the list of observers of the subject
+     */
+    private final List<FractalObserver> observers = new CopyOnWriteArrayList<>();
+
+    /**
+     * the rules the next tree is grown from, or null if none were set. Written while holding
+     * requestLock
+     */
+    private volatile RuleSet rules;
+
+    /**
+     * the most branches a tree is expected to grow before it is grown fewer levels deep
+     */
+    private int branchBudget = DEFAULT_BRANCH_BUDGET;
+
+    /**
+     * the executor used to grow in the background, or null to grow on the thread that sets
+     * the rules
+     */
+    private ExecutorService executor;
+
+    /**
+     * the background build that has not started yet, or null
+     */
+    private Future<?> pending;
+
+    /**
+     * the number of setRules() and setView() calls so far. A background build is skipped once
+     * this no longer matches the request it was started for
+     */
+    private volatile long latestRequest;
+
+    /**
+     * lock held while recording a setRules() or setView() call, separate from the generator's
+     * own lock so that setting rules never waits for a tree to finish growing
+     */
+    private final Object requestLock = new Object();
+
+    /**
+     * the rules the branch buffer was last grown from, or null if nothing was grown
+     */
+    private RuleSet generated;
+
+    /**
+     * the rules the tables below were compiled from, or null if none were compiled
+     */
+    private RuleSet compiledRules;
+
+    /**
+     * the buffer the last tree was grown into
+     */
+    private BranchBuffer buffer = new BranchBuffer(0);
+
+    /**
+     * a second buffer to grow into while the last tree may still be drawn
+     */
+    private BranchBuffer backBuffer = new BranchBuffer(0);
+
+    /**
+     * the last snapshot published to the observers, or null if nothing was published
+     */
+    private volatile FractalSnapshot snapshot;
+
+    /**
+     * the version number given to the last snapshot
+     */
+    private long version;
+
+    /**
+     * the compiled rules: for each child, the cosine, sine and angle in radians it is turned by,
+     * the ratio it shrinks by and the chance it grows
+     */
+    private double[] childCos = new double[0], childSin = new double[0], childAngle = new double[0],
+            childRatio = new double[0], childProbability = new double[0];
+
+    /**
+     * the compiled jitter: for each child, JITTER_STEPS cosines, sines and angles it may be turned
+     * by instead of its own angle. Empty for children without jitter
+     */
+    private double[][] jitterCos = new double[0][], jitterSin = new double[0][],
+            jitterAngle = new double[0][];
+
+    /**
+     * whether every compiled rule always grows its child at exactly its angle, which lets the
+     * growing loop skip the random number generator
+     */
+    private boolean deterministic;
+
+    /**
+     * whether every compiled rule shrinks its child by the same ratio. Then every branch on a
+     * level has the same length and width, which are taken from per-level tables instead of
+     * being carried by each branch
+     */
+    private boolean uniform;
+
+    /**
+     * the length of the branches on each level, when the ratio is uniform
+     */
+    private double[] levelLengths = new double[0];
+
+    /**
+     * the width of the branches on each level truncated to whole pixels, when the ratio is uniform
+     */
+    private int[] levelWidths = new int[0];
+
+    /**
+     * the packed color for each level of the tree
+     */
+    private int[] levelColors = new int[0];
+
+    /**
+     * the packed color of the deepest level the rules ask for, which branches too short to see
+     * are grown in
+     */
+    private int tipColor;
+
+    /**
+     * for each level, how far the subtree rooted on that level can reach from its starting point
+     */
+    private double[] levelReach = new double[0];
+
+    /**
+     * the buffer indices of the branches on the level being expanded, and the same for the level
+     * being filled in, swapped after every level
+     */
+    private int[] frontierIndex = new int[0], nextIndex = new int[0];
+
+    /**
+     * the cosine, sine and angle of the direction, the length and the width of each branch on
+     * the level being expanded, interleaved so a branch's values sit together, and the same for
+     * the level being filled in
+     */
+    private double[] frontier = new double[0], next = new double[0];
+
+    /**
+     * the state of the random number generator used while growing a tree
+     */
+    private long random;
+
+    /**
+     * the number of levels of the tree being grown, including levels added for the zoom
+     */
+    private int depth;
+
+    /**
+     * the length and width of the trunk, scaled to the canvas and view
+     */
+    private double trunkLength, trunkWidth;
+
+    /**
+     * the x-coordinate on the canvas of the starting point of the first branch
+     */
+    private int originX = FractalGenerator.CANVAS_WIDTH / 2;
+
+    /**
+     * the y-coordinate on the canvas of the starting point of the first branch
+     */
+    private int originY = FractalGenerator.CANVAS_HEIGHT;
+
+    /**
+     * the factor trunk length and width are scaled by to fit the canvas
+     */
+    private double scale = 1;
+
+    /**
+     * the part of the canvas the next tree is for. Written while holding requestLock
+     */
+    private volatile FractalView view = FractalView.DEFAULT;
+
+    /**
+     * the part of the canvas the branch buffer was last grown for
+     */
+    private FractalView generatedView = FractalView.DEFAULT;
+
+    /**
+     * the area of the canvas that is shown, or null to grow every subtree
+     */
+    private Rectangle viewport;
+
+    /**
+     * the shortest a branch may be before it and everything below it is left out
+     */
+    private double minBranchLength;
+
+    /**
+     * constructs a generator whose setOptions() grows two children from every branch, the same
+     * tree FractalGenerator generates
+     */
+    public RuleGenerator(){
+        this(2);
+    }
+
+    /**
+     * constructs a generator whose setOptions() fans every branch into the passed number of
+     * children between the right and left child angles
+     * @param children  the number of children per branch, between 1 and RuleSet.MAX_CHILDREN
+     */
+    public RuleGenerator(int children){
+        if (children < 1 || children > RuleSet.MAX_CHILDREN){
+            throw new IllegalArgumentException("Children must be between 1 and " + RuleSet.MAX_CHILDREN);
+        }
+        this.children = children;
+    }
+
+    /**
+     * sets the size of the canvas the fractal is grown for, scaling the trunk the same way
+     * FractalGenerator.setCanvas() does
+     * @param width     the width of the canvas in pixels, must be positive
+     * @param height    the height of the canvas in pixels, must be positive
+     */
+    public synchronized void setCanvas(int width, int height){
+        if (width < 1 || height < 1){
+            throw new IllegalArgumentException("Canvas size must be positive");
+        }
+        originX = width / 2;
+        originY = height;
+        scale = Math.min((double) width / FractalGenerator.CANVAS_WIDTH,
+                (double) height / FractalGenerator.CANVAS_HEIGHT);
+        generated = null;
+    }
+
+    /**
+     * sets the area of the canvas that is shown. Subtrees that can not reach into the viewport
+     * are not grown
+     * @param viewport  the visible area in canvas coordinates, or null to grow every subtree
+     */
+    public synchronized void setViewport(Rectangle viewport){
+        this.viewport = viewport == null ? null : new Rectangle(viewport);
+        generated = null;
+    }
+
+    /**
+     * sets the shortest branch worth growing. A child shorter than this is grown in the color of
+     * the deepest level, which would be drawn over the pixel its subtree lands on, but
+     * everything below it is left out
+     * @param minBranchLength   the shortest branch length in pixels, or 0 to grow every level
+     */
+    public synchronized void setLevelOfDetail(double minBranchLength){
+        if (!(minBranchLength >= 0)){
+            throw new IllegalArgumentException("Minimum branch length may not be negative");
+        }
+        this.minBranchLength = minBranchLength;
+        generated = null;
+    }
+
+    /**
+     * sets the most branches a tree is expected to grow. Rules which would grow more are grown
+     * fewer levels deep, see getGrownDepth()
+     * @param branchBudget  the most branches, between 1 and MAX_BRANCHES
+     */
+    public synchronized void setBranchBudget(int branchBudget){
+        if (branchBudget < 1 || branchBudget > MAX_BRANCHES){
+            throw new IllegalArgumentException("Branch budget must be between 1 and " + MAX_BRANCHES);
+        }
+        this.branchBudget = branchBudget;
+        generated = null;
+    }
+
+    /**
+     * gets the number of levels the last tree was grown with, which is less than its rules ask
+     * for if they would grow more branches than the budget allows, and more if zooming added
+     * levels
+     * @return  the number of levels, or 0 if nothing was grown
+     */
+    public synchronized int getGrownDepth(){
+        return generated == null ? 0 : depth;
+    }
+
+    /**
+     * sets whether the fractal is grown on a background thread. When it is, setRules(),
+     * setOptions() and setView() return right away, and a call made while an older one has not
+     * started growing replaces it, so only the latest rules are published to the observers
+     * @param asynchronous  true to grow in the background, false to grow on the thread that
+     *                      sets the rules
+     */
+    public void setAsynchronous(boolean asynchronous){
+        synchronized (requestLock) {
+            if (asynchronous && executor == null){
+                executor = Executors.newSingleThreadExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "rule-generator");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            } else if (!asynchronous && executor != null){
+                executor.shutdown();
+                executor = null;
+            }
+        }
+    }
+
+    /**
+     * sets the rules to grow the fractal from, grows it and publishes it to the observers
+     * @param rules     the rules to grow the fractal from
+     */
+    public void setRules(RuleSet rules){
+        synchronized (requestLock) {
+            this.rules = rules;
+        }
+        requestBuild();
+    }
+
+    /**
+     * gets the rules the fractal is grown from
+     * @return  the rules, or null if none were set
+     */
+    public RuleSet getRules(){
+        return rules;
+    }
+
+    /**
+     * sets the part of the canvas that is shown and grows the fractal for it. Zooming in with a
+     * viewport adds a level for every time the zoom makes the shortest level as long as the one
+     * above it was
+     * @param view  the part of the canvas to show
+     */
+    @Override
+    public void setView(FractalView view){
+        synchronized (requestLock) {
+            this.view = view;
+            if (rules == null){
+                return;
+            }
+        }
+        requestBuild();
+    }
+
+    /**
+     * gets the part of the canvas that is shown
+     * @return  the view
+     */
+    public FractalView getView(){
+        return view;
+    }
+
+    /**
+     * sets the options of the fractal, fanning every branch into this generator's number of
+     * children between the right and left child angles, then grows it and publishes it
+     * @param recDepth      the number of levels
+     * @param ratio         the child-to-parent ratio as a percentage
+     * @param lChAngle      the angle of the leftmost child in degrees
+     * @param rChAngle      the angle of the rightmost child in degrees
+     * @param trunkLength   the length of the trunk
+     * @param trunkWidth    the width of the trunk
+     * @param trunkColor    the color of the trunk
+     * @param leafColor     the color the deepest level fades to
+     */
+    @Override
+    public void setOptions(int recDepth, int ratio, int lChAngle, int rChAngle, int trunkLength,
+                           int trunkWidth, Color trunkColor, Color leafColor){
+        setRules(RuleSet.fromOptions(new FractalOptions(recDepth, ratio, lChAngle, rChAngle,
+                trunkLength, trunkWidth, trunkColor, leafColor), children));
+    }
+
+    /**
+     * notifies observers that an update is available by passing each of them the last
+     * published snapshot
+     */
+    @Override
+    public void notifyObservers(){
+        FractalSnapshot published = snapshot;
+        for (FractalObserver observer : observers) {
+            observer.update(published);
+        }
+    }
+
+    /**
+     * adds a new observer to the list of observers
+     * @param obs  the observer to register
+     */
+    @Override
+    public void registerObservers(FractalObserver obs){
+        observers.add(obs);
+    }
+
+    /**
+     * removes an observer from the list of observers
+     * @param obs  the observer to remove
+     */
+    @Override
+    public void unregisterObservers(FractalObserver obs){
+        observers.remove(obs);
+    }
+
+    /**
+     * copies the grown branches into Branch records
+     * @return  an ArrayList of fractal elements
+     */
+    @Override
+    public synchronized ArrayList<FractalElement> getFractalElements(){
+        BranchBuffer branches = getBranchBuffer();
+        synchronized (branches) {
+            return branches.toElements();
+        }
+    }
+
+    /**
+     * grows the fractal for the current rules if it was not grown yet. The returned buffer may
+     * be reused for a later tree, so it should only be read while synchronized on it
+     * @return  the branch buffer holding the fractal
+     */
+    @Override
+    public synchronized BranchBuffer getBranchBuffer(){
+        if (rules == null){
+            throw new IllegalStateException("No rules or options have been set");
+        }
+        return build();
+    }
+
+    /**
+     * gets the last snapshot published to the observers
+     * @return  the snapshot, or null if nothing has been published yet
+     */
+    @Override
+    public FractalSnapshot getSnapshot(){
+        return snapshot;
+    }
+
+    /**
+     * grows the fractal for the latest rules and view and publishes it, on the background
+     * thread when growing asynchronously
+     */
+    private void requestBuild(){
+        long request;
+        synchronized (requestLock) {
+            request = ++latestRequest;
+            if (executor != null){
+                if (pending != null){
+                    pending.cancel(false);
+                }
+                pending = executor.submit(() -> buildAndPublish(request));
+                return;
+            }
+        }
+        buildAndPublish(request);
+    }
+
+    /**
+     * grows the fractal and publishes it to the observers, unless a newer request was made
+     * before growing started
+     * @param request   the request the build is for
+     */
+    private void buildAndPublish(long request){
+        synchronized (this) {
+            if (request != latestRequest){
+                return;
+            }
+            BranchBuffer branches = build();
+            FractalSnapshot last = snapshot;
+            if (last == null || last.branches() != branches || !last.view().equals(generatedView)){
+                snapshot = new FractalSnapshot(++version, generated.toOptions(), generatedView, branches);
+            }
+        }
+        notifyObservers();
+    }
+
+    /**
+     * grows the fractal for the current rules and view. The last tree may still be drawn, so the
+     * new one is grown into the second buffer while holding its lock, and the two buffers swap
+     * once it is complete. The rules are only compiled again when they changed
+     * @return  the branch buffer holding the fractal
+     */
+    private BranchBuffer build(){
+        RuleSet requested;
+        FractalView requestedView;
+        synchronized (requestLock) {
+            requested = rules;
+            requestedView = view;
+        }
+        if (requested.equals(generated) && requestedView.equals(generatedView)){
+            return buffer;
+        }
+        if (!requested.equals(compiledRules)){
+            compile(requested);
+        }
+        prepare(requested, requestedView);
+
+        BranchBuffer target = backBuffer;
+        synchronized (target) {
+            grow(target, requested, requestedView);
+        }
+        backBuffer = buffer;
+        buffer = target;
+        generated = requested;
+        generatedView = requestedView;
+        return buffer;
+    }
+
+    /**
+     * compiles the rules into the tables grow() reads: one rotation, ratio and probability per
+     * child, and a table of rotations for every child with jitter
+     * @param compiled  the rules to compile
+     */
+    private void compile(RuleSet compiled){
+        int count = compiled.rules().size();
+        childCos = new double[count];
+        childSin = new double[count];
+        childAngle = new double[count];
+        childRatio = new double[count];
+        childProbability = new double[count];
+        jitterCos = new double[count][];
+        jitterSin = new double[count][];
+        jitterAngle = new double[count][];
+        compiledRules = compiled;
+        deterministic = true;
+        uniform = true;
+        for (int c = 0; c < count; c++) {
+            BranchRule rule = compiled.rules().get(c);
+            childAngle[c] = Math.toRadians(rule.angle());
+            childCos[c] = Math.cos(childAngle[c]);
+            childSin[c] = Math.sin(childAngle[c]);
+            childRatio[c] = rule.ratio();
+            childProbability[c] = rule.probability();
+            deterministic &= rule.deterministic();
+            uniform &= rule.ratio() == compiled.rules().get(0).ratio();
+            if (rule.jitter() > 0){
+                jitterCos[c] = new double[JITTER_STEPS];
+                jitterSin[c] = new double[JITTER_STEPS];
+                jitterAngle[c] = new double[JITTER_STEPS];
+                for (int j = 0; j < JITTER_STEPS; j++) {
+                    double angle = Math.toRadians(rule.angle()
+                            + rule.jitter() * (2.0 * j / (JITTER_STEPS - 1) - 1));
+                    jitterAngle[c][j] = angle;
+                    jitterCos[c][j] = Math.cos(angle);
+                    jitterSin[c][j] = Math.sin(angle);
+                }
+            }
+        }
+    }
+
+    /**
+     * fills in the per-level tables and the trunk for the passed rules and view. Colors fade by
+     * the same whole-number steps FractalGenerator uses, and levels added for the zoom keep the
+     * deepest level's color. With a uniform ratio, lengths and widths are multiplied out level
+     * by level the same way FractalGenerator does
+     * @param prepared      the rules being grown
+     * @param requestedView the part of the canvas being grown for
+     */
+    private void prepare(RuleSet prepared, FractalView requestedView){
+        trunkLength = prepared.trunkLength() * scale * requestedView.zoom();
+        trunkWidth = prepared.trunkWidth() * scale * requestedView.zoom();
+        double maxRatio = 0;
+        for (double r : childRatio) {
+            maxRatio = Math.max(maxRatio, r);
+        }
+
+        int baseDepth = prepared.depth();
+        depth = baseDepth;
+        if (viewport != null && requestedView.zoom() > 1){
+            int extraLevels = (int) (Math.log(requestedView.zoom()) / -Math.log(maxRatio));
+            depth = Math.min(baseDepth + extraLevels, FractalGenerator.MAX_DEPTH);
+        }
+
+        Color trunk = prepared.trunkColor();
+        Color leaf = prepared.leafColor();
+        int redIncrement = (leaf.getRed() - trunk.getRed()) / baseDepth;
+        int greenIncrement = (leaf.getGreen() - trunk.getGreen()) / baseDepth;
+        int blueIncrement = (leaf.getBlue() - trunk.getBlue()) / baseDepth;
+        if (levelColors.length < depth){
+            levelColors = new int[depth];
+            levelReach = new double[depth];
+            levelLengths = new double[depth];
+            levelWidths = new int[depth];
+        }
+        double length = trunkLength;
+        double width = trunkWidth;
+        for (int level = 0; level < depth; level++) {
+            levelLengths[level] = length;
+            levelWidths[level] = (int) width;
+            length *= maxRatio;
+            width *= maxRatio;
+        }
+
+        //estimate the branches from the expected number of children, stopping at the level the
+        //level of detail leaves out, and leave off the levels that would not fit the budget.
+        //The lengths use the largest ratio, so the estimate only errs on the high side
+        double expectedChildren = 0;
+        for (double probability : childProbability) {
+            expectedChildren += probability;
+        }
+        double total = 1;
+        double levelBranches = 1;
+        for (int level = 1; level < depth; level++) {
+            levelBranches *= expectedChildren;
+            total += levelBranches;
+            if (total > branchBudget){
+                depth = level;
+                break;
+            }
+            if (levelLengths[level] < minBranchLength){
+                break;
+            }
+        }
+        for (int level = 0; level < depth; level++) {
+            int step = Math.min(level, baseDepth - 1);
+            levelColors[level] = BranchBuffer.packColor(trunk.getRed() + step * redIncrement,
+                    trunk.getGreen() + step * greenIncrement, trunk.getBlue() + step * blueIncrement);
+        }
+        tipColor = BranchBuffer.packColor(trunk.getRed() + (baseDepth - 1) * redIncrement,
+                trunk.getGreen() + (baseDepth - 1) * greenIncrement,
+                trunk.getBlue() + (baseDepth - 1) * blueIncrement);
+
+        //the longest a branch on each level can be bounds how far its subtree reaches, the same
+        //way FractalGenerator.computeReach() bounds it with its level lengths
+        double lengths = 0;
+        for (int level = depth - 1; level >= 0; level--) {
+            lengths += levelLengths[level];
+            levelReach[level] = lengths + levelWidths[level] / 2.0 + 1 + 2 * (depth - level);
+        }
+    }
+
+    /**
+     * grows the tree into a buffer one level at a time, trunk first, so the buffer is written
+     * from front to back. Each level is expanded by giving every branch on the frontier its
+     * children in rule order. Children shorter than the level of detail, children that lose
+     * their roll of the dice, and all the children of a branch whose endpoint can not reach the
+     * viewport are left out. The columns and the frontier are written directly and only grown
+     * when full, so a tree no bigger than the last one allocates nothing
+     * @param target        the buffer to grow into
+     * @param grown         the rules being grown
+     * @param grownView     the part of the canvas being grown for
+     */
+    private void grow(BranchBuffer target, RuleSet grown, FractalView grownView){
+        random = grown.seed() ^ 0x9E3779B97F4A7C15L;
+        if (random == 0){
+            random = 1;     //xorshift never leaves zero
+        }
+        long expected = Math.min(grown.maxBranches(), Math.max(target.capacity(), INITIAL_CAPACITY));
+        target.prepare((int) expected);
+        target.clear();
+        int xOrigin = (int) Math.round((originX - grownView.x()) * grownView.zoom());
+        int yOrigin = (int) Math.round((originY - grownView.y()) * grownView.zoom());
+        if (viewport != null && outsideViewport(xOrigin, yOrigin, levelReach[0])){
+            return;
+        }
+        int count = childRatio.length;
+        boolean culling = viewport != null;
+        boolean chance = !deterministic;
+        double minLength = minBranchLength;
+
+        //the trunk
+        target.add(xOrigin, yOrigin,
+                xOrigin + xOffset(trunkLength, Math.cos(STARTING_ANGLE), STARTING_ANGLE),
+                yOrigin - yOffset(trunkLength, Math.sin(STARTING_ANGLE), STARTING_ANGLE),
+                (int) trunkWidth, levelColors[0], 0);
+        ensureFrontier(1);
+        frontierIndex[0] = 0;
+        frontier[0] = Math.cos(STARTING_ANGLE);
+        frontier[1] = Math.sin(STARTING_ANGLE);
+        frontier[2] = STARTING_ANGLE;
+        frontier[3] = trunkLength;
+        frontier[4] = trunkWidth;   //only read when the ratio is not uniform
+        int frontierSize = 1;
+
+        double[] ratios = childRatio, turnCos = childCos, turnSin = childSin, turnAngle = childAngle;
+        boolean flat = uniform;
+        int stride = flat ? 3 : 5;
+        int n = target.size();
+        int capacity = target.capacity();
+        int[] x1s = target.x1, y1s = target.y1, x2s = target.x2, y2s = target.y2, colors = target.color;
+        float[] widths = target.width;
+        byte[] levels = target.level;
+        for (int level = 1; level < depth && frontierSize > 0; level++) {
+            //with a uniform ratio the first level too short to see is grown in the deepest
+            //level's color and everything below it is left out
+            boolean tips = flat && levelLengths[level] < minLength;
+            boolean last = level == depth - 1 || tips;
+            int color = tips ? tipColor : levelColors[level];
+            double reach = culling ? levelReach[level] : 0;
+            double flatLength = levelLengths[level];
+            int flatWidth = levelWidths[level];
+            int nextSize = 0;
+            double[] parents = frontier;
+            double[] filled = next;
+            int[] childIndex = nextIndex;
+            for (int j = 0; j < frontierSize; j++) {
+                int parent = frontierIndex[j];
+                int px = x2s[parent];
+                int py = y2s[parent];
+
+                //all the children start at the parent's endpoint, so they are culled together
+                if (culling && outsideViewport(px, py, reach)){
+                    continue;
+                }
+                if (n + count > capacity){
+                    if (n + count > MAX_BRANCHES){
+                        throw new IllegalArgumentException("Rules grow more than " + MAX_BRANCHES
+                                + " branches, lower the depth or set a level of detail");
+                    }
+                    target.size = n;
+                    target.ensureCapacity(n + count);
+                    capacity = target.capacity();
+                    x1s = target.x1;
+                    y1s = target.y1;
+                    x2s = target.x2;
+                    y2s = target.y2;
+                    widths = target.width;
+                    colors = target.color;
+                    levels = target.level;
+                }
+                if (!last && nextSize + count > childIndex.length){
+                    ensureFrontier(nextSize + count);
+                    parents = frontier;
+                    filled = next;
+                    childIndex = nextIndex;
+                }
+                int f = stride * j;
+                double cos = parents[f];
+                double sin = parents[f + 1];
+                double angle = parents[f + 2];
+                double length = flat ? 0 : parents[f + 3];
+                double width = flat ? 0 : parents[f + 4];
+                for (int c = 0; c < count; c++) {
+                    double childLength = flatLength;
+                    double childWidth = flatWidth;
+                    boolean tip = false;
+                    if (!flat){
+                        childLength = length * ratios[c];
+                        childWidth = width * ratios[c];
+                        tip = childLength < minLength;
+                    }
+                    if (chance && !grows(c)){
+                        continue;
+                    }
+                    double rCos = turnCos[c], rSin = turnSin[c], rAngle = turnAngle[c];
+                    if (chance && jitterCos[c] != null){
+                        int step = jitterStep();
+                        rCos = jitterCos[c][step];
+                        rSin = jitterSin[c][step];
+                        rAngle = jitterAngle[c][step];
+                    }
+                    double turnedCos = cos * rCos - sin * rSin;
+                    double turnedSin = sin * rCos + cos * rSin;
+                    double turnedAngle = angle + rAngle;
+                    x1s[n] = px;
+                    y1s[n] = py;
+                    x2s[n] = px + xOffset(childLength, turnedCos, turnedAngle);
+                    y2s[n] = py - yOffset(childLength, turnedSin, turnedAngle);
+                    widths[n] = (int) childWidth;
+                    colors[n] = tip ? tipColor : color;
+                    levels[n] = (byte) level;
+                    if (!last && !tip){
+                        childIndex[nextSize] = n;
+                        int d = stride * nextSize++;
+                        filled[d] = turnedCos;
+                        filled[d + 1] = turnedSin;
+                        filled[d + 2] = turnedAngle;
+                        if (!flat){
+                            filled[d + 3] = childLength;
+                            filled[d + 4] = childWidth;
+                        }
+                    }
+                    n++;
+                }
+            }
+
+            //swap the frontier with the level just filled in
+            int[] tempIndex = frontierIndex;
+            frontierIndex = nextIndex;
+            nextIndex = tempIndex;
+            double[] temp = frontier;
+            frontier = next;
+            next = temp;
+            frontierSize = nextSize;
+        }
+        target.size = n;
+    }
+
+    /**
+     * grows the level being filled in to hold at least the passed number of branches, keeping
+     * the branches already in it. The frontier grows with it so the two can always be swapped
+     * @param size  the number of branches to make room for
+     */
+    private void ensureFrontier(int size){
+        if (size <= nextIndex.length && size <= frontierIndex.length){
+            return;
+        }
+        int grown = Math.max(size, 2 * nextIndex.length);
+        nextIndex = Arrays.copyOf(nextIndex, grown);
+        next = Arrays.copyOf(next, 5 * grown);
+        frontierIndex = Arrays.copyOf(frontierIndex, grown);
+        frontier = Arrays.copyOf(frontier, 5 * grown);
+    }
+
+    /**
+     * rolls the dice for a child which may not grow
+     * @param c     the index of the child's rule
+     * @return      true if the child grows
+     */
+    private boolean grows(int c){
+        return childProbability[c] == 1 || nextDouble() < childProbability[c];
+    }
+
+    /**
+     * picks a random angle for a child with jitter
+     * @return  an index into the child's jitter tables
+     */
+    private int jitterStep(){
+        return (int) (nextLong() >>> 58);   //the top six bits, as JITTER_STEPS is 64
+    }
+
+    /**
+     * advances the xorshift random number generator
+     * @return  the next 64 random bits
+     */
+    private long nextLong(){
+        random ^= random << 13;
+        random ^= random >>> 7;
+        random ^= random << 17;
+        return random;
+    }
+
+    /**
+     * gets a random number from the xorshift generator
+     * @return  a number at least 0 and less than 1
+     */
+    private double nextDouble(){
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * checks whether a subtree starting at the passed point can not reach the viewport
+     * @param x         the x-coordinate the subtree starts at
+     * @param y         the y-coordinate the subtree starts at
+     * @param reach     how far the subtree can reach from its starting point
+     * @return          true if the subtree lies entirely outside the viewport
+     */
+    private boolean outsideViewport(int x, int y, double reach){
+        double dx = x < viewport.x ? viewport.x - x : Math.max(x - (viewport.x + viewport.width), 0);
+        double dy = y < viewport.y ? viewport.y - y : Math.max(y - (viewport.y + viewport.height), 0);
+        return dx * dx + dy * dy > reach * reach;
+    }
+
+    /**
+     * truncates a branch's x offset to whole pixels the same way FractalGenerator does, falling
+     * back to Math.cos when the rotated offset is too close to a whole number to trust
+     * @param length    the length of the branch
+     * @param cos       the cosine of the branch angle found by rotation
+     * @param angle     the branch angle
+     * @return          the truncated offset
+     */
+    private static int xOffset(double length, double cos, double angle){
+        double value = length * cos;
+        if (Math.abs(value - Math.rint(value)) < TRUNCATION_EPSILON){
+            return (int) (length * Math.cos(angle));
+        }
+        return (int) value;
+    }
+
+    /**
+     * truncates a branch's y offset to whole pixels, falling back to Math.sin the same way
+     * xOffset() falls back to Math.cos
+     * @param length    the length of the branch
+     * @param sin       the sine of the branch angle found by rotation
+     * @param angle     the branch angle
+     * @return          the truncated offset
+     */
+    private static int yOffset(double length, double sin, double angle){
+        double value = length * sin;
+        if (Math.abs(value - Math.rint(value)) < TRUNCATION_EPSILON){
+            return (int) (length * Math.sin(angle));
+        }
+        return (int) value;
+    }
+}
@@ -0,0 +1,117 @@
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * record for the rules a RuleGenerator grows a fractal from. Every branch grows one child for
+ * each rule, in rule order, until the tree is depth levels deep. Colors fade from the trunk
+ * color to the leaf color over the levels the same way FractalGenerator fades them. Randomness
+ * in the rules is drawn from a generator seeded with the seed, so the same rule set always
+ * grows the same tree.
+ * @author Gwen Tait
+ * @version 10-17-26
+ *
+ *
+ * @param depth         the number of levels, where the trunk is level 0
+ * @param trunkLength   the length of the trunk, for the 1000 by 800 canvas
+ * @param trunkWidth    the width of the trunk, for the 1000 by 800 canvas
+ * @param trunkColor    the color of the trunk
+ * @param leafColor     the color the deepest level fades to
+ * @param rules         the children every branch may grow, in the order they are stored
+ * @param seed          the seed for the rules' randomness
+ */
+public record RuleSet(int depth, int trunkLength, int trunkWidth, Color trunkColor, Color leafColor,
+                      List<BranchRule> rules, long seed) {
+    /**
+     * the most children a branch may grow
+     */
+    public static final int MAX_CHILDREN = 8;
+
+    /**
+     * checks the depth and number of rules, and copies the rules so the rule set can not change
+     * @param depth         the number of levels
+     * @param trunkLength   the length of the trunk
+     * @param trunkWidth    the width of the trunk
+     * @param trunkColor    the color of the trunk
+     * @param leafColor     the color the deepest level fades to
+     * @param rules         the children every branch may grow
+     * @param seed          the seed for the rules' randomness
+     */
+    public RuleSet {
+        if (depth < 1 || depth > FractalGenerator.MAX_DEPTH){
+            throw new IllegalArgumentException("Depth must be between 1 and "
+                    + FractalGenerator.MAX_DEPTH);
+        }
+        if (rules.isEmpty() || rules.size() > MAX_CHILDREN){
+            throw new IllegalArgumentException("A rule set needs between 1 and " + MAX_CHILDREN
+                    + " rules");
+        }
+        rules = List.copyOf(rules);
+    }
+
+    /**
+     * gets the rule set for a fractal with the passed options that grows the passed number of
+     * children from every branch. The children are fanned evenly from the right child angle to
+     * the left child angle, so two children grow exactly the tree FractalGenerator generates
+     * @param options   the options of the fractal
+     * @param children  the number of children per branch, between 1 and MAX_CHILDREN
+     * @return          the rule set
+     */
+    public static RuleSet fromOptions(FractalOptions options, int children){
+        if (children < 1 || children > MAX_CHILDREN){
+            throw new IllegalArgumentException("Children must be between 1 and " + MAX_CHILDREN);
+        }
+        //the same conversion FractalGenerator makes, so the binary tree matches it exactly
+        double ratio = options.ratio() * .01;
+        List<BranchRule> rules = new ArrayList<>(children);
+        if (children == 1){
+            rules.add(new BranchRule((options.lChAngle() - options.rChAngle()) / 2.0, ratio));
+        } else {
+            double spread = options.lChAngle() + options.rChAngle();
+            for (int i = 0; i < children; i++) {
+                double angle = i == 0 ? -options.rChAngle()
+                        : i == children - 1 ? options.lChAngle()
+                        : -options.rChAngle() + spread * i / (children - 1);
+                rules.add(new BranchRule(angle, ratio));
+            }
+        }
+        return new RuleSet(options.recDepth(), options.trunkLength(), options.trunkWidth(),
+                options.trunkColor(), options.leafColor(), rules, 0);
+    }
+
+    /**
+     * describes the rule set as fractal options, for code which only understands binary trees.
+     * The ratio is the largest of the rules' ratios, and the angles are the furthest each way
+     * @return  the closest fractal options
+     */
+    public FractalOptions toOptions(){
+        double ratio = 0;
+        double left = 0;
+        double right = 0;
+        for (BranchRule rule : rules) {
+            ratio = Math.max(ratio, rule.ratio());
+            left = Math.max(left, rule.angle());
+            right = Math.max(right, -rule.angle());
+        }
+        return new FractalOptions(depth, (int) Math.round(ratio * 100), (int) Math.round(left),
+                (int) Math.round(right), trunkLength, trunkWidth, trunkColor, leafColor);
+    }
+
+    /**
+     * gets the largest number of branches the rule set can grow, if every child grows and
+     * nothing is left out
+     * @return  the number of branches, or Long.MAX_VALUE if it does not fit in a long
+     */
+    public long maxBranches(){
+        long total = 0;
+        long level = 1;
+        for (int i = 0; i < depth; i++) {
+            total += level;
+            if (total < 0 || level > Long.MAX_VALUE / rules.size()){
+                return Long.MAX_VALUE;
+            }
+            level *= rules.size();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,87 @@
+import java.util.Arrays;
+
+/**
+ * keeps the most recent samples of a measurement in a ring buffer so percentiles can be read over
+ * a sliding window. Recording overwrites the oldest sample and allocates nothing; percentiles
+ * sort a copy of the window, which is cheap for the window sizes used here and only happens
+ * when they are read.
+ * @author Gwen Tait
+ * @version 10-17-26
+ */
+public class SlidingHistogram {
+    /**
+     * the samples in the window, in the order they were recorded starting at next
+     */
+    private final long[] samples;
+
+    /**
+     * the window sorted while reading a percentile
+     */
+    private final long[] sorted;
+
+    /**
+     * the index the next sample is written to
+     */
+    private int next;
+
+    /**
+     * the number of samples in the window
+     */
+    private int count;
+
+    /**
+     * constructs an empty histogram
+     * @param window    the number of most recent samples to keep, must be at least 1
+     */
+    public SlidingHistogram(int window){
+        if (window < 1){
+            throw new IllegalArgumentException("Window must hold at least 1 sample");
+        }
+        samples = new long[window];
+        sorted = new long[window];
+    }
+
+    /**
+     * adds a sample, dropping the oldest one once the window is full
+     * @param value     the sample
+     */
+    public synchronized void record(long value){
+        samples[next] = value;
+        next = (next + 1) % samples.length;
+        count = Math.min(count + 1, samples.length);
+    }
+
+    /**
+     * gets a percentile of the samples in the window, using the nearest rank
+     * @param percent   the percentile to get, from 0 to 100
+     * @return          the sample at that percentile, or 0 if there are no samples
+     */
+    public synchronized long percentile(double percent){
+        if (percent < 0 || percent > 100){
+            throw new IllegalArgumentException("Percentile must be between 0 and 100");
+        }
+        if (count == 0){
+            return 0;
+        }
+        System.arraycopy(samples, 0, sorted, 0, count);
+        Arrays.sort(sorted, 0, count);
+        int rank = (int) Math.ceil(percent / 100 * count);
+        return sorted[Math.max(rank - 1, 0)];
+    }
+
+    /**
+     * gets the number of samples in the window
+     * @return  the number of samples
+     */
+    public synchronized int count(){
+        return count;
+    }
+
+    /**
+     * removes every sample
+     */
+    public synchronized void clear(){
+        next = 0;
+        count = 0;
+    }
+}
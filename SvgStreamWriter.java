@@ -0,0 +1,404 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * writes fractal elements as an SVG image, streaming the document to a writer as it goes so
+ * not even one path is kept in memory. Branches with the same level, width and color are merged
+ * into one path element drawn with a single stroke, and every segment is written as a relative
+ * move and line with whole pixel coordinates, so a segment usually takes around ten characters.
+ * Segments too short to show up at a target print resolution can be left out.
+ * @author Gwen Tait
+ * @version 10-17-26
+ */
+public class SvgStreamWriter implements Closeable {
+    /**
+     * the resolution the canvas is printed at unless another one is passed, which is the
+     * resolution SVG viewers assume for pixels
+     */
+    public static final double DEFAULT_DPI = 96;
+
+    /**
+     * the most segments to put in one path element, which keeps paths small enough for viewers
+     * to handle
+     */
+    private static final int MAX_SEGMENTS_PER_PATH = 1 << 16;
+
+    /**
+     * the writer the document is written to
+     */
+    private final Writer out;
+
+    /**
+     * characters waiting to be written to out
+     */
+    private final char[] pending = new char[1 << 16];
+
+    /**
+     * the number of characters in pending
+     */
+    private int pendingSize;
+
+    /**
+     * the canvas resolution, in pixels per inch
+     */
+    private final double dpi;
+
+    /**
+     * the shortest segment to write in pixels, squared, or 0 to write every segment
+     */
+    private double minLengthSquared;
+
+    /**
+     * the point the last segment ended at, which the next one is written relative to
+     */
+    private int penX, penY;
+
+    /**
+     * whether the last thing written to the path data was a number, so the next positive
+     * number needs a separator
+     */
+    private boolean afterNumber;
+
+    /**
+     * the branches collected from runs of Branch records, written together once the run ends
+     */
+    private final BranchBuffer records = new BranchBuffer(0);
+
+    /**
+     * the number of segments written and left out so far
+     */
+    private long written, pruned;
+
+    /**
+     * starts an SVG image of the passed canvas size by writing its header and a black background
+     * @param out       the writer to write to, closed when this writer is closed
+     * @param width     the width of the canvas in pixels
+     * @param height    the height of the canvas in pixels
+     * @param dpi       the resolution the canvas is printed at, in pixels per inch
+     * @throws IOException if the header can not be written
+     */
+    public SvgStreamWriter(Writer out, int width, int height, double dpi) throws IOException {
+        if (width < 1 || height < 1){
+            throw new IllegalArgumentException("Image size must be positive");
+        }
+        if (!(dpi > 0)){
+            throw new IllegalArgumentException("Resolution must be positive");
+        }
+        this.out = out;
+        this.dpi = dpi;
+        write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        write(String.format(Locale.ROOT, "<svg xmlns=\"http://www.w3.org/2000/svg\""
+                        + " width=\"%.3fin\" height=\"%.3fin\" viewBox=\"0 0 %d %d\">\n",
+                width / dpi, height / dpi, width, height));
+        write("<rect width=\"100%\" height=\"100%\" fill=\"#000000\"/>\n");
+        write("<g fill=\"none\" stroke-linecap=\"round\" stroke-linejoin=\"round\">\n");
+    }
+
+    /**
+     * sets the resolution of the printer the image is meant for. Branches shorter than one dot
+     * at that resolution are left out, since a single one mostly lies within the round end of
+     * its parent, which is at least as wide. A chain of them can reach past that end, so the
+     * printed image can lose a little detail at the tips, more so when the printer's resolution
+     * is below the canvas resolution. Trunks are always written
+     * @param printDpi  the printer's resolution in dots per inch, or 0 to write every segment
+     */
+    public void setPrintResolution(double printDpi){
+        if (!(printDpi >= 0)){
+            throw new IllegalArgumentException("Print resolution must not be negative");
+        }
+        double dot = printDpi == 0 ? 0 : dpi / printDpi;
+        minLengthSquared = dot * dot;
+    }
+
+    /**
+     * writes a list of fractal elements in order. Runs of Branch records are merged into paths
+     * by width and color
+     * @param elements  the elements to write
+     * @throws IOException if the elements can not be written
+     */
+    public void write(List<? extends FractalElement> elements) throws IOException {
+        for (FractalElement element : elements) {
+            if (element instanceof Branch branch){
+                records.add(branch.x1(), branch.y1(), branch.x2(), branch.y2(), branch.width(),
+                        branch.color().getRGB(), 0);
+            } else {
+                flushRecords();
+                write(element);
+            }
+        }
+        flushRecords();
+    }
+
+    /**
+     * writes one fractal element. Branch buffers, snapshots, mapped fractal files and branches
+     * can be written
+     * @param element   the element to write
+     * @throws IOException if the element can not be written
+     */
+    public void write(FractalElement element) throws IOException {
+        if (element instanceof BranchBuffer branches){
+            write(branches);
+        } else if (element instanceof FractalSnapshot snapshot){
+            BranchBuffer branches = snapshot.branches();
+            synchronized (branches) {
+                write(branches);
+            }
+        } else if (element instanceof MappedFractal fractal){
+            BranchBuffer branches = new BranchBuffer(0);
+            fractal.copyTo(branches);
+            write(branches);
+        } else if (element instanceof Branch){
+            write(List.of(element));
+        } else {
+            throw new IllegalArgumentException("Can not export " + element.getClass().getName());
+        }
+    }
+
+    /**
+     * writes the branches in a branch buffer as one path per level, width and color. The
+     * branches are read once to find the groups and once more per group, so nothing but the
+     * groups themselves is held in memory. Groups are written from the trunk down, so deeper
+     * levels are drawn over shallower ones like BatchedRenderer draws them
+     * @param branches  the branches to write
+     * @throws IOException if the branches can not be written
+     */
+    public void write(BranchBuffer branches) throws IOException {
+        //find every distinct level, width and color, in order of level
+        long[] groups = new long[16];
+        int groupCount = 0;
+        long last = -1;
+        for (int i = 0; i < branches.size; i++) {
+            if (branches.level[i] < 0){
+                i += branches.x1[i] - 1;
+                continue;
+            }
+            long key = key(branches, i);
+            if (key == last){
+                continue;
+            }
+            last = key;
+            int g = 0;
+            while (g < groupCount && groups[g] != key) {
+                g++;
+            }
+            if (g == groupCount){
+                if (groupCount == groups.length){
+                    groups = Arrays.copyOf(groups, 2 * groupCount);
+                }
+                groups[groupCount++] = key;
+            }
+        }
+        Arrays.sort(groups, 0, groupCount);
+
+        for (int g = 0; g < groupCount; g++) {
+            long key = groups[g];
+            int segments = 0;
+            for (int i = 0; i < branches.size; i++) {
+                if (branches.level[i] < 0){
+                    //a range marked with markSkipped() holds no branches
+                    i += branches.x1[i] - 1;
+                    continue;
+                }
+                if (key(branches, i) != key){
+                    continue;
+                }
+                int dx = branches.x2[i] - branches.x1[i];
+                int dy = branches.y2[i] - branches.y1[i];
+                if (branches.level[i] > 0 && (double) dx * dx + (double) dy * dy < minLengthSquared){
+                    pruned++;
+                    continue;
+                }
+                if (segments == 0){
+                    startPath(branches.width[i], branches.color[i]);
+                }
+                segment(branches.x1[i], branches.y1[i], dx, dy);
+                if (++segments == MAX_SEGMENTS_PER_PATH){
+                    endPath();
+                    segments = 0;
+                }
+            }
+            if (segments > 0){
+                endPath();
+            }
+        }
+    }
+
+    /**
+     * gets the number of segments written so far
+     * @return  the number of segments
+     */
+    public long getWrittenCount(){
+        return written;
+    }
+
+    /**
+     * gets the number of segments left out so far for being too short to print
+     * @return  the number of segments
+     */
+    public long getPrunedCount(){
+        return pruned;
+    }
+
+    /**
+     * finishes the document and closes the writer
+     * @throws IOException if the document can not be finished
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flushRecords();
+            write("</g>\n</svg>\n");
+            flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * gets the group a branch is merged into: its level, then its width, then its color, packed
+     * so that groups sort by level
+     * @param branches  the branches
+     * @param index     the index of the branch
+     * @return          the packed group
+     */
+    private static long key(BranchBuffer branches, int index){
+        return ((long) branches.level[index] << 56) | ((long) ((int) branches.width[index] & 0xFFFFFF) << 32)
+                | (branches.color[index] & 0xFFFFFFFFL);
+    }
+
+    /**
+     * writes the branches collected from a run of Branch records and empties the collection
+     * @throws IOException if the branches can not be written
+     */
+    private void flushRecords() throws IOException {
+        if (records.size() > 0){
+            write(records);
+            records.clear();
+        }
+    }
+
+    /**
+     * starts a path element with the passed stroke. Width 0 strokes are drawn one pixel wide,
+     * like the thinnest line Graphics draws for them
+     * @param width     the width of the stroke
+     * @param color     the packed ARGB color of the stroke
+     * @throws IOException if the element can not be written
+     */
+    private void startPath(float width, int color) throws IOException {
+        write("<path stroke=\"#");
+        for (int shift = 20; shift >= 0; shift -= 4) {
+            append(Character.forDigit((color >> shift) & 0xF, 16));
+        }
+        append('"');
+        int alpha = color >>> 24;
+        if (alpha != 0xFF){
+            write(String.format(Locale.ROOT, " stroke-opacity=\"%.3f\"", alpha / 255.0));
+        }
+        write(" stroke-width=\"");
+        afterNumber = false;
+        number(Math.max((int) width, 1));
+        //a relative move at the start of a path is taken from the origin
+        write("\" d=\"");
+        penX = 0;
+        penY = 0;
+    }
+
+    /**
+     * ends the path element being written
+     * @throws IOException if the element can not be written
+     */
+    private void endPath() throws IOException {
+        write("\"/>\n");
+    }
+
+    /**
+     * adds a segment to the path being written as a move relative to the end of the last
+     * segment and a line relative to the move
+     * @param x     the x-coordinate of the start of the segment
+     * @param y     the y-coordinate of the start of the segment
+     * @param dx    the x offset to the end of the segment
+     * @param dy    the y offset to the end of the segment
+     * @throws IOException if the segment can not be written
+     */
+    private void segment(int x, int y, int dx, int dy) throws IOException {
+        if (x != penX || y != penY){
+            append('m');
+            afterNumber = false;
+            number(x - penX);
+            number(y - penY);
+        }
+        append('l');
+        afterNumber = false;
+        number(dx);
+        number(dy);
+        penX = x + dx;
+        penY = y + dy;
+        written++;
+    }
+
+    /**
+     * writes a whole number to the path data, with a space before it only if it would
+     * otherwise run into the number before it
+     * @param value     the number to write
+     * @throws IOException if the number can not be written
+     */
+    private void number(int value) throws IOException {
+        if (pendingSize + 12 > pending.length){
+            flush();
+        }
+        if (value < 0){
+            pending[pendingSize++] = '-';
+            value = -value;
+        } else if (afterNumber){
+            pending[pendingSize++] = ' ';
+        }
+        int start = pendingSize;
+        do {
+            pending[pendingSize++] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        //the digits were written lowest first
+        for (int i = start, j = pendingSize - 1; i < j; i++, j--) {
+            char temp = pending[i];
+            pending[i] = pending[j];
+            pending[j] = temp;
+        }
+        afterNumber = true;
+    }
+
+    /**
+     * adds one character to the document
+     * @param c     the character
+     * @throws IOException if the pending characters can not be written
+     */
+    private void append(char c) throws IOException {
+        if (pendingSize == pending.length){
+            flush();
+        }
+        pending[pendingSize++] = c;
+    }
+
+    /**
+     * adds text to the document
+     * @param text  the text
+     * @throws IOException if the pending characters can not be written
+     */
+    private void write(String text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            append(text.charAt(i));
+        }
+    }
+
+    /**
+     * writes the pending characters to the writer
+     * @throws IOException if they can not be written
+     */
+    private void flush() throws IOException {
+        out.write(pending, 0, pendingSize);
+        pendingSize = 0;
+    }
+}
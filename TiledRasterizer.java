@@ -0,0 +1,276 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * software renderer which draws branches straight into an ARGB pixel array on several threads.
+ * The canvas is split into square tiles and every branch is binned into the tiles its bounding
+ * box overlaps. The tiles are then rasterized in parallel; each tile only writes its own pixels
+ * and draws its branches in buffer order, so no locking is needed and overlapping branches end
+ * up in the same order Graphics would draw them. Lines are drawn with round caps by filling every
+ * pixel whose center lies within half the line width of the segment, like an aliased BasicStroke.
+ * @author Gwen Tait
+ * @version 10-17-26
+ */
+public class TiledRasterizer {
+    /**
+     * the pool the tiles are rasterized on
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * the width and height of a tile in pixels
+     */
+    private final int tileSize;
+
+    /**
+     * for each tile, the index in binned where its branches start. The extra last entry
+     * marks the end of the final tile
+     */
+    private int[] tileStart = new int[1];
+
+    /**
+     * the indices of the branches overlapping each tile, grouped by tile
+     */
+    private int[] binned = new int[0];
+
+    /**
+     * the first and last tile column and row overlapped by the branch being binned
+     */
+    private final int[] range = new int[4];
+
+    /**
+     * constructs a rasterizer which draws on the passed number of threads
+     * @param threads   the number of threads to rasterize with, must be at least 1
+     * @param tileSize  the width and height of a tile in pixels, must be at least 1
+     */
+    public TiledRasterizer(int threads, int tileSize){
+        if (threads < 1){
+            throw new IllegalArgumentException("Thread count must be at least 1");
+        }
+        if (tileSize < 1){
+            throw new IllegalArgumentException("Tile size must be at least 1");
+        }
+        this.pool = new ForkJoinPool(threads);
+        this.tileSize = tileSize;
+    }
+
+    /**
+     * draws the branches of a snapshot into an image while holding the buffer's lock
+     * @param snapshot      the snapshot to draw
+     * @param image         the image to draw into, must be TYPE_INT_RGB or TYPE_INT_ARGB
+     * @param background    the packed ARGB color to clear the image to
+     */
+    public void render(FractalSnapshot snapshot, BufferedImage image, int background){
+        if (image.getType() != BufferedImage.TYPE_INT_RGB && image.getType() != BufferedImage.TYPE_INT_ARGB){
+            throw new IllegalArgumentException("Image must store pixels as ints");
+        }
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        BranchBuffer branches = snapshot.branches();
+        synchronized (branches) {
+            render(branches, pixels, image.getWidth(), image.getHeight(), background);
+        }
+    }
+
+    /**
+     * draws the branches in a branch buffer into a pixel array
+     * @param branches      the branches to draw
+     * @param pixels        the ARGB pixels to draw into, one row after another
+     * @param width         the width of the canvas in pixels
+     * @param height        the height of the canvas in pixels
+     * @param background    the packed ARGB color to clear the canvas to
+     */
+    public void render(BranchBuffer branches, int[] pixels, int width, int height, int background){
+        render(branches, pixels, width, height, 0, 0, background);
+    }
+
+    /**
+     * draws the part of a branch buffer's canvas starting at the passed corner into a pixel
+     * array, so a large canvas can be rendered one band at a time
+     * @param branches      the branches to draw
+     * @param pixels        the ARGB pixels to draw into, one row after another
+     * @param width         the width of the area to draw in pixels
+     * @param height        the height of the area to draw in pixels
+     * @param left          the x-coordinate of the canvas drawn at the first pixel column
+     * @param top           the y-coordinate of the canvas drawn at the first pixel row
+     * @param background    the packed ARGB color to clear the area to
+     */
+    public synchronized void render(BranchBuffer branches, int[] pixels, int width, int height,
+                                    int left, int top, int background){
+        int tilesX = (width + tileSize - 1) / tileSize;
+        int tilesY = (height + tileSize - 1) / tileSize;
+        bin(branches, width, height, left, top, tilesX, tilesY);
+        pool.submit(() -> IntStream.range(0, tilesX * tilesY).parallel().forEach(tile ->
+                rasterizeTile(branches, pixels, width, height, left, top, tile % tilesX,
+                        tile / tilesX, tilesX, background))).join();
+    }
+
+    /**
+     * sorts the branch indices by the tiles their bounding boxes overlap, counting first and
+     * then filling so that the bins are one flat array
+     * @param branches  the branches to bin
+     * @param width     the width of the canvas in pixels
+     * @param height    the height of the canvas in pixels
+     * @param left      the x-coordinate of the canvas drawn at the first pixel column
+     * @param top       the y-coordinate of the canvas drawn at the first pixel row
+     * @param tilesX    the number of tile columns
+     * @param tilesY    the number of tile rows
+     */
+    private void bin(BranchBuffer branches, int width, int height, int left, int top,
+                     int tilesX, int tilesY){
+        int tiles = tilesX * tilesY;
+        if (tileStart.length < tiles + 1){
+            tileStart = new int[tiles + 1];
+        }
+        Arrays.fill(tileStart, 0, tiles + 1, 0);
+
+        //count how many branches overlap each tile, shifted by one so the prefix sum gives starts
+        for (int i = 0; i < branches.size; i++) {
+            if (!tileRange(branches, i, width, height, left, top, tilesX, tilesY)){
+                continue;
+            }
+            for (int ty = range[1]; ty <= range[3]; ty++) {
+                for (int tx = range[0]; tx <= range[2]; tx++) {
+                    tileStart[ty * tilesX + tx + 1]++;
+                }
+            }
+        }
+        for (int tile = 0; tile < tiles; tile++) {
+            tileStart[tile + 1] += tileStart[tile];
+        }
+        if (binned.length < tileStart[tiles]){
+            binned = new int[tileStart[tiles]];
+        }
+
+        //fill the bins in buffer order, using the next free slot of each tile
+        int[] next = Arrays.copyOf(tileStart, tiles);
+        for (int i = 0; i < branches.size; i++) {
+            if (!tileRange(branches, i, width, height, left, top, tilesX, tilesY)){
+                continue;
+            }
+            for (int ty = range[1]; ty <= range[3]; ty++) {
+                for (int tx = range[0]; tx <= range[2]; tx++) {
+                    binned[next[ty * tilesX + tx]++] = i;
+                }
+            }
+        }
+    }
+
+    /**
+     * finds the tiles a branch's bounding box overlaps, including its round caps, and stores
+     * the first and last tile column and row in range
+     * @param branches  the branches
+     * @param i         the index of the branch
+     * @param width     the width of the canvas in pixels
+     * @param height    the height of the canvas in pixels
+     * @param left      the x-coordinate of the canvas drawn at the first pixel column
+     * @param top       the y-coordinate of the canvas drawn at the first pixel row
+     * @param tilesX    the number of tile columns
+     * @param tilesY    the number of tile rows
+     * @return          false if the branch is entirely off the canvas
+     */
+    private boolean tileRange(BranchBuffer branches, int i, int width, int height, int left, int top,
+                              int tilesX, int tilesY){
+        int r = (int) Math.ceil(radius(branches.width[i]));
+        int minX = Math.min(branches.x1[i], branches.x2[i]) - r - left;
+        int maxX = Math.max(branches.x1[i], branches.x2[i]) + r - left;
+        int minY = Math.min(branches.y1[i], branches.y2[i]) - r - top;
+        int maxY = Math.max(branches.y1[i], branches.y2[i]) + r - top;
+        if (maxX < 0 || maxY < 0 || minX >= width || minY >= height){
+            return false;
+        }
+        range[0] = Math.max(minX, 0) / tileSize;
+        range[1] = Math.max(minY, 0) / tileSize;
+        range[2] = Math.min(maxX / tileSize, tilesX - 1);
+        range[3] = Math.min(maxY / tileSize, tilesY - 1);
+        return true;
+    }
+
+    /**
+     * clears one tile and draws every branch binned into it
+     * @param branches      the branches
+     * @param pixels        the ARGB pixels to draw into
+     * @param width         the width of the canvas in pixels
+     * @param height        the height of the canvas in pixels
+     * @param left          the x-coordinate of the canvas drawn at the first pixel column
+     * @param top           the y-coordinate of the canvas drawn at the first pixel row
+     * @param tx            the tile column
+     * @param ty            the tile row
+     * @param tilesX        the number of tile columns
+     * @param background    the packed ARGB color to clear the tile to
+     */
+    private void rasterizeTile(BranchBuffer branches, int[] pixels, int width, int height,
+                               int left, int top, int tx, int ty, int tilesX, int background){
+        int tileLeft = tx * tileSize;
+        int tileTop = ty * tileSize;
+        int tileRight = Math.min(tileLeft + tileSize, width);
+        int tileBottom = Math.min(tileTop + tileSize, height);
+        for (int y = tileTop; y < tileBottom; y++) {
+            Arrays.fill(pixels, y * width + tileLeft, y * width + tileRight, background);
+        }
+
+        int tile = ty * tilesX + tx;
+        for (int k = tileStart[tile]; k < tileStart[tile + 1]; k++) {
+            int i = binned[k];
+            drawLine(pixels, width, tileLeft, tileTop, tileRight, tileBottom,
+                    branches.x1[i] - left, branches.y1[i] - top, branches.x2[i] - left,
+                    branches.y2[i] - top, radius(branches.width[i]), branches.color[i]);
+        }
+    }
+
+    /**
+     * fills every pixel of the clip rectangle whose center is within the radius of the segment,
+     * which draws the segment as a thick line with round caps
+     * @param pixels    the ARGB pixels to draw into
+     * @param width     the width of the canvas in pixels
+     * @param left      the left edge of the clip, inclusive
+     * @param top       the top edge of the clip, inclusive
+     * @param right     the right edge of the clip, exclusive
+     * @param bottom    the bottom edge of the clip, exclusive
+     * @param x1        the x-coordinate of the start of the line
+     * @param y1        the y-coordinate of the start of the line
+     * @param x2        the x-coordinate of the endpoint of the line
+     * @param y2        the y-coordinate of the endpoint of the line
+     * @param radius    half the width of the line
+     * @param color     the packed ARGB color of the line
+     */
+    private static void drawLine(int[] pixels, int width, int left, int top, int right, int bottom,
+                                 int x1, int y1, int x2, int y2, double radius, int color){
+        int r = (int) Math.ceil(radius);
+        int minX = Math.max(Math.min(x1, x2) - r, left);
+        int maxX = Math.min(Math.max(x1, x2) + r, right - 1);
+        int minY = Math.max(Math.min(y1, y2) - r, top);
+        int maxY = Math.min(Math.max(y1, y2) + r, bottom - 1);
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        double lengthSq = dx * dx + dy * dy;
+        double radiusSq = radius * radius;
+
+        for (int y = minY; y <= maxY; y++) {
+            double fy = y - y1;
+            int row = y * width;
+            for (int x = minX; x <= maxX; x++) {
+                double fx = x - x1;
+                double t = lengthSq == 0 ? 0 : (fx * dx + fy * dy) / lengthSq;
+                t = t < 0 ? 0 : (t > 1 ? 1 : t);
+                double ex = fx - t * dx;
+                double ey = fy - t * dy;
+                if (ex * ex + ey * ey <= radiusSq){
+                    pixels[row + x] = color;
+                }
+            }
+        }
+    }
+
+    /**
+     * gets half the drawn width of a line, treating widths under one pixel as one pixel
+     * the way BasicStroke draws its thinnest lines
+     * @param width     the width of the line
+     * @return          the radius to fill around the segment
+     */
+    private static double radius(float width){
+        return Math.max((int) width, 1) * 0.5;
+    }
+}
@@ -0,0 +1,118 @@
+import javax.swing.*;
+import java.awt.*;
+
+/**
+ * coalesces option changes from the GUI before they reach the subject. Only the latest pending
+ * options are kept, and they are sent from a Swing timer once the current event is handled, so
+ * a burst of changes (like randomizing every slider) becomes one update. While a slider is being
+ * dragged, previews are sent at most once per display refresh and with a reduced depth; when the
+ * slider is released the options are sent right away at full depth. Must be used on the event
+ * dispatch thread.
+ * @author Gwen Tait
+ * @version 10-17-26
+ */
+public class UpdateScheduler {
+    /**
+     * the refresh rate assumed when the display does not report one
+     */
+    private static final int DEFAULT_REFRESH_RATE = 60;
+
+    /**
+     * the subject to send the options to
+     */
+    private final FractalSubject subject;
+
+    /**
+     * the deepest a preview sent while dragging may be
+     */
+    private final int previewDepth;
+
+    /**
+     * the shortest time between two previews in nanoseconds
+     */
+    private final long intervalNanos;
+
+    /**
+     * the timer the pending options are sent from
+     */
+    private final Timer timer;
+
+    /**
+     * the latest options not sent yet, or null
+     */
+    private FractalOptions pending;
+
+    /**
+     * the time options were last sent, from System.nanoTime()
+     */
+    private long lastSent;
+
+    /**
+     * constructs a new scheduler for the passed subject
+     * @param subject       the subject to send the options to
+     * @param previewDepth  the deepest a preview sent while dragging may be, must be at least 1
+     * @param maxRate       the most previews to send per second, must be at least 1
+     */
+    public UpdateScheduler(FractalSubject subject, int previewDepth, int maxRate){
+        if (subject == null){
+            throw new IllegalArgumentException("Subject may not be null");
+        }
+        if (previewDepth < 1){
+            throw new IllegalArgumentException("Preview depth must be at least 1");
+        }
+        if (maxRate < 1){
+            throw new IllegalArgumentException("Rate must be at least 1");
+        }
+        this.subject = subject;
+        this.previewDepth = previewDepth;
+        this.intervalNanos = 1_000_000_000L / maxRate;
+        this.timer = new Timer(0, e -> flush());
+        timer.setRepeats(false);
+    }
+
+    /**
+     * gets the refresh rate of the default screen
+     * @return  the refresh rate in hertz, or 60 if it is unknown
+     */
+    public static int displayRefreshRate(){
+        if (GraphicsEnvironment.isHeadless()){
+            return DEFAULT_REFRESH_RATE;
+        }
+        int rate = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+                .getDisplayMode().getRefreshRate();
+        return rate == DisplayMode.REFRESH_RATE_UNKNOWN ? DEFAULT_REFRESH_RATE : rate;
+    }
+
+    /**
+     * schedules the passed options to be sent, replacing any options not sent yet
+     * @param options       the options to send
+     * @param adjusting     true while a slider is being dragged, which sends a reduced depth
+     *                      no more than once per refresh; false to send the full depth as
+     *                      soon as the current event is handled
+     */
+    public void submit(FractalOptions options, boolean adjusting){
+        pending = adjusting && options.recDepth() > previewDepth
+                ? options.withDepth(previewDepth) : options;
+        if (adjusting && timer.isRunning()){
+            return;
+        }
+        long delay = adjusting ? Math.max(lastSent + intervalNanos - System.nanoTime(), 0) : 0;
+        timer.setInitialDelay((int) (delay / 1_000_000));
+        timer.restart();
+    }
+
+    /**
+     * sends the pending options to the subject
+     */
+    private void flush(){
+        FractalOptions options = pending;
+        if (options == null){
+            return;
+        }
+        pending = null;
+        lastSent = System.nanoTime();
+        subject.setOptions(options.recDepth(), options.ratio(), options.lChAngle(),
+                options.rChAngle(), options.trunkLength(), options.trunkWidth(),
+                options.trunkColor(), options.leafColor());
+    }
+}
@@ -0,0 +1,98 @@
+import java.awt.*;
+import java.util.function.Supplier;
+
+/**
+ * generation workload for the benchmarks. Lives in the default package with the rest of the
+ * program so it can use the generator directly; the JMH benchmarks, which have to be in a named
+ * package, load it by name. Every call regenerates the whole fractal by alternating between the
+ * requested trunk length and one pixel more, since the generator returns the last fractal
+ * unchanged when the options are the same. The angles stay as requested, so a tree with equal
+ * child angles is generated in mirror image pairs on every call unless mirroring is turned off.
+ * @author Gwen Tait
+ * @version 10-17-26
+ */
+public class GenerationWorkload implements Supplier<Object> {
+    /**
+     * the generator being measured
+     */
+    private final FractalSubject generator;
+
+    /**
+     * whether to return Branch records instead of the branch buffer
+     */
+    private final boolean elements;
+
+    /**
+     * the options to generate, before alternating the left angle
+     */
+    private final int depth, ratio, lChAngle, rChAngle;
+
+    /**
+     * the number of fractals generated so far
+     */
+    private int calls;
+
+    /**
+     * constructs a workload which generates with the passed settings, mirroring trees with
+     * equal child angles
+     * @param mode      "levelOrder", "recursive" or "parallel" for FractalGenerator, or "rules"
+     *                  for RuleGenerator growing the same two-child tree
+     * @param output    "elements" to return getFractalElements(), "buffer" for getBranchBuffer()
+     * @param depth     the recursion depth
+     * @param shape     the ratio, left angle and right angle, separated by slashes
+     */
+    public GenerationWorkload(String mode, String output, int depth, String shape){
+        this(mode, output, depth, shape, "mirrored");
+    }
+
+    /**
+     * constructs a workload which generates with the passed settings
+     * @param mode      "levelOrder", "recursive" or "parallel" for FractalGenerator, or "rules"
+     *                  for RuleGenerator growing the same two-child tree
+     * @param output    "elements" to return getFractalElements(), "buffer" for getBranchBuffer()
+     * @param depth     the recursion depth
+     * @param shape     the ratio, left angle and right angle, separated by slashes
+     * @param mirroring "mirrored" to generate trees with equal child angles in mirror image
+     *                  pairs, or "unmirrored" to generate every branch on its own
+     */
+    public GenerationWorkload(String mode, String output, int depth, String shape, String mirroring){
+        if (mode.equals("rules")){
+            generator = new RuleGenerator();
+        } else {
+            FractalGenerator fractalGenerator = new FractalGenerator();
+            switch (mode) {
+                case "levelOrder" -> fractalGenerator.setLevelOrder(true);
+                case "recursive" -> fractalGenerator.setLevelOrder(false);
+                case "parallel" -> fractalGenerator.setParallelism(
+                        Runtime.getRuntime().availableProcessors(), 8);
+                default -> throw new IllegalArgumentException("Unknown mode: " + mode);
+            }
+            switch (mirroring) {
+                case "mirrored" -> fractalGenerator.setMirroring(true);
+                case "unmirrored" -> fractalGenerator.setMirroring(false);
+                default -> throw new IllegalArgumentException("Unknown mirroring: " + mirroring);
+            }
+            generator = fractalGenerator;
+        }
+        if (!output.equals("elements") && !output.equals("buffer")){
+            throw new IllegalArgumentException("Unknown output: " + output);
+        }
+        String[] parts = shape.split("/");
+        this.elements = output.equals("elements");
+        this.depth = depth;
+        this.ratio = Integer.parseInt(parts[0]);
+        this.lChAngle = Integer.parseInt(parts[1]);
+        this.rChAngle = Integer.parseInt(parts[2]);
+    }
+
+    /**
+     * regenerates the fractal
+     * @return  the generated elements or branch buffer
+     */
+    @Override
+    public Object get(){
+        generator.setOptions(depth, ratio, lChAngle, rChAngle, 250 + (calls++ & 1), 25,
+                Color.BLUE, Color.GREEN);
+        return elements ? generator.getFractalElements() : generator.getBranchBuffer();
+    }
+}
@@ -0,0 +1,96 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.function.Supplier;
+
+/**
+ * painting workload for the benchmarks. Generates one fractal up front and then paints it into
+ * a headless 1000 by 800 image the way the drawing window does, with the renderer being
+ * measured. Loaded by name from the JMH benchmarks, like GenerationWorkload.
+ * @author Gwen Tait
+ * @version 10-17-26
+ */
+public class PaintWorkload implements Supplier<Object> {
+    /**
+     * the image painted into
+     */
+    private final BufferedImage image = new BufferedImage(FractalGenerator.CANVAS_WIDTH,
+            FractalGenerator.CANVAS_HEIGHT, BufferedImage.TYPE_INT_RGB);
+
+    /**
+     * the renderer to paint with
+     */
+    private final String renderer;
+
+    /**
+     * the generated fractal as Branch records
+     */
+    private final ArrayList<FractalElement> elements;
+
+    /**
+     * the generated fractal as a branch buffer
+     */
+    private final BranchBuffer branches;
+
+    /**
+     * the batched renderer, used by "batched"
+     */
+    private final BatchedRenderer batched = new BatchedRenderer();
+
+    /**
+     * the software rasterizer, used by "tiled"
+     */
+    private final TiledRasterizer tiled;
+
+    /**
+     * constructs a workload which paints a fractal of the passed depth
+     * @param renderer  "branches" to call Branch.draw for every element, "buffer" for
+     *                  BranchBuffer.draw, "batched" for BatchedRenderer or "tiled" for
+     *                  TiledRasterizer
+     * @param depth     the recursion depth of the fractal
+     */
+    public PaintWorkload(String renderer, int depth){
+        if (!renderer.matches("branches|buffer|batched|tiled")){
+            throw new IllegalArgumentException("Unknown renderer: " + renderer);
+        }
+        this.renderer = renderer;
+        FractalGenerator generator = new FractalGenerator();
+        generator.setOptions(depth, 60, 45, 45, 250, 25, Color.BLUE, Color.GREEN);
+        elements = generator.getFractalElements();
+        branches = new BranchBuffer();
+        branches.copyFrom(generator.getBranchBuffer());
+        tiled = renderer.equals("tiled")
+                ? new TiledRasterizer(Runtime.getRuntime().availableProcessors(), 64) : null;
+    }
+
+    /**
+     * clears the image and paints the fractal into it
+     * @return  the image
+     */
+    @Override
+    public Object get(){
+        if (tiled != null){
+            int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            tiled.render(branches, pixels, image.getWidth(), image.getHeight(), Color.BLACK.getRGB());
+            return image;
+        }
+        Graphics2D g2d = image.createGraphics();
+        try {
+            g2d.setColor(Color.BLACK);
+            g2d.fillRect(0, 0, image.getWidth(), image.getHeight());
+            switch (renderer) {
+                case "branches" -> {
+                    for (FractalElement element : elements) {
+                        element.draw(g2d);
+                    }
+                }
+                case "buffer" -> branches.draw(g2d);
+                default -> batched.draw(g2d, branches);
+            }
+        } finally {
+            g2d.dispose();
+        }
+        return image;
+    }
+}
@@ -0,0 +1,48 @@
+package bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+
+/**
+ * runs the benchmarks with the GC profiler always on, so every result reports the allocation
+ * rate and bytes allocated per operation next to the time. Takes the usual JMH command line,
+ * for example <code>java -jar target/benchmarks.jar Generation -p depth=16</code>
+ * @author Gwen Tait
+ * @version 10-17-26
+ */
+public final class BenchmarkMain {
+    /**
+     * not instantiable
+     */
+    private BenchmarkMain(){
+    }
+
+    /**
+     * runs the benchmarks selected on the command line
+     * @param args  JMH command line options
+     * @throws CommandLineOptionException if the options can not be parsed
+     * @throws RunnerException if a benchmark fails
+     * @throws IOException if the help can not be printed
+     */
+    public static void main(String[] args)
+            throws CommandLineOptionException, RunnerException, IOException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        if (commandLine.shouldHelp()){
+            commandLine.showHelp();
+            return;
+        }
+        Runner runner = new Runner(new OptionsBuilder().parent(commandLine)
+                .addProfiler(GCProfiler.class).build());
+        if (commandLine.shouldList()){
+            runner.list();
+            return;
+        }
+        runner.run();
+    }
+}
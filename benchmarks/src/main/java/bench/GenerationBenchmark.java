@@ -0,0 +1,76 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * measures generating a whole fractal, with the generator's three generation modes and with
+ * the rule generator, returning either Branch records from getFractalElements() or the branch
+ * buffer. Every invocation regenerates from scratch.
+ * @author Gwen Tait
+ * @version 10-17-26
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GenerationBenchmark {
+    /**
+     * the recursion depth
+     */
+    @Param({"4", "8", "12", "16", "20"})
+    public int depth;
+
+    /**
+     * the ratio, left angle and right angle
+     */
+    @Param({"60/45/45", "78/5/85", "45/30/60"})
+    public String shape;
+
+    /**
+     * how the generator generates
+     */
+    @Param({"levelOrder", "recursive", "parallel", "rules"})
+    public String mode;
+
+    /**
+     * the workload returning Branch records
+     */
+    private Supplier<Object> elements;
+
+    /**
+     * the workload returning the branch buffer
+     */
+    private Supplier<Object> buffer;
+
+    /**
+     * creates the workloads for this trial
+     */
+    @Setup
+    public void setUp(){
+        elements = Workloads.create("GenerationWorkload", mode, "elements", depth, shape);
+        buffer = Workloads.create("GenerationWorkload", mode, "buffer", depth, shape);
+    }
+
+    /**
+     * generates the fractal and copies it into Branch records with getFractalElements()
+     * @return  the elements
+     */
+    @Benchmark
+    public Object fractalElements(){
+        return elements.get();
+    }
+
+    /**
+     * generates the fractal into the branch buffer
+     * @return  the buffer
+     */
+    @Benchmark
+    public Object branchBuffer(){
+        return buffer.get();
+    }
+}
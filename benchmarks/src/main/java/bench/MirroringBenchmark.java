@@ -0,0 +1,67 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * measures generating a tree with equal child angles into the branch buffer with and without
+ * mirroring, so the gain from generating mirror image pairs is measured on its own. Every
+ * invocation regenerates from scratch with the same angles.
+ * @author Gwen Tait
+ * @version 10-17-26
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MirroringBenchmark {
+    /**
+     * the recursion depth
+     */
+    @Param({"12", "16", "20"})
+    public int depth;
+
+    /**
+     * the ratio and the equal left and right angles
+     */
+    @Param({"60/45/45", "70/20/20"})
+    public String shape;
+
+    /**
+     * how the generator generates
+     */
+    @Param({"levelOrder", "recursive", "parallel"})
+    public String mode;
+
+    /**
+     * whether the tree is generated in mirror image pairs
+     */
+    @Param({"mirrored", "unmirrored"})
+    public String mirroring;
+
+    /**
+     * the workload returning the branch buffer
+     */
+    private Supplier<Object> buffer;
+
+    /**
+     * creates the workload for this trial
+     */
+    @Setup
+    public void setUp(){
+        buffer = Workloads.create("GenerationWorkload", mode, "buffer", depth, shape, mirroring);
+    }
+
+    /**
+     * generates the fractal into the branch buffer
+     * @return  the buffer
+     */
+    @Benchmark
+    public Object branchBuffer(){
+        return buffer.get();
+    }
+}
@@ -0,0 +1,56 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * measures painting a generated fractal into a headless image the way the drawing window does:
+ * one Branch.draw call per element as the program originally did, BranchBuffer.draw, the
+ * batched renderer and the tiled software rasterizer.
+ * @author Gwen Tait
+ * @version 10-17-26
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PaintBenchmark {
+    /**
+     * the recursion depth of the painted fractal
+     */
+    @Param({"8", "12", "16", "20"})
+    public int depth;
+
+    /**
+     * the renderer to paint with
+     */
+    @Param({"branches", "buffer", "batched", "tiled"})
+    public String renderer;
+
+    /**
+     * the workload
+     */
+    private Supplier<Object> paint;
+
+    /**
+     * generates the fractal for this trial
+     */
+    @Setup
+    public void setUp(){
+        System.setProperty("java.awt.headless", "true");
+        paint = Workloads.create("PaintWorkload", renderer, depth);
+    }
+
+    /**
+     * clears the image and paints the fractal into it
+     * @return  the image
+     */
+    @Benchmark
+    public Object paint(){
+        return paint.get();
+    }
+}
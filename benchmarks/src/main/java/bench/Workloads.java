@@ -0,0 +1,40 @@
+package bench;
+
+import java.lang.reflect.Constructor;
+import java.util.function.Supplier;
+
+/**
+ * loads the workloads the benchmarks measure. The program lives in the default package, which
+ * named packages can not import, and JMH only generates benchmarks in named packages, so each
+ * workload is a default-package Supplier created by name once per trial. Calling it through
+ * Supplier is a single monomorphic interface call, which the JIT inlines.
+ * @author Gwen Tait
+ * @version 10-17-26
+ */
+final class Workloads {
+    /**
+     * not instantiable
+     */
+    private Workloads(){
+    }
+
+    /**
+     * creates a workload with the constructor matching the passed arguments
+     * @param className     the name of the workload class
+     * @param args          the constructor arguments, Strings and Integers
+     * @return              the workload
+     */
+    @SuppressWarnings("unchecked")
+    static Supplier<Object> create(String className, Object... args){
+        try {
+            for (Constructor<?> constructor : Class.forName(className).getConstructors()) {
+                if (constructor.getParameterCount() == args.length){
+                    return (Supplier<Object>) constructor.newInstance(args);
+                }
+            }
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not create " + className, e);
+        }
+        throw new IllegalStateException("No constructor for " + className);
+    }
+}
@@ -0,0 +1,55 @@
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * checks that a generator answering from its cache gives the same branches and culled count as
+ * a generator building every fractal from scratch
+ * @author Gwen Tait
+ * @version 10-17-26
+ */
+class FractalCacheTest {
+    /**
+     * the number of options set in a row
+     */
+    private static final int STEPS = 300;
+
+    /**
+     * sets a random sequence of options drawn from a small set, so most of them are cache hits,
+     * on a cached generator and compares each result with a fresh generator
+     */
+    @Test
+    void hitsMatchFreshBuilds(){
+        Random random = new Random(13);
+        FractalGenerator cached = generator();
+        cached.setCache(new FractalCache(0, 64 << 20));
+        for (int step = 0; step < STEPS; step++) {
+            int depth = 10 + random.nextInt(7);
+            int ratio = 55 + 5 * random.nextInt(4);
+            int angle = 20 + 10 * random.nextInt(3);
+            int width = 5 + 10 * random.nextInt(3);
+            Color leaf = random.nextBoolean() ? Color.GREEN : Color.YELLOW;
+            cached.setOptions(depth, ratio, angle, 45, 250, width, Color.BLUE, leaf);
+            FractalGenerator fresh = generator();
+            fresh.setOptions(depth, ratio, angle, 45, 250, width, Color.BLUE, leaf);
+            String options = depth + "/" + ratio + "/" + angle + "/" + width + " " + leaf;
+            Trees.assertSameBranches(fresh.getBranchBuffer(), cached.getBranchBuffer(), options);
+            assertEquals(fresh.getCulledCount(), cached.getCulledCount(), options);
+        }
+    }
+
+    /**
+     * creates a parallel generator which culls to the canvas and leaves out sub-pixel branches
+     * @return  the generator
+     */
+    private static FractalGenerator generator(){
+        FractalGenerator generator = new FractalGenerator(3, 6);
+        generator.setCanvas(Trees.WIDTH, Trees.HEIGHT);
+        generator.setViewport(new Rectangle(0, 0, Trees.WIDTH, Trees.HEIGHT));
+        generator.setLevelOfDetail(1);
+        return generator;
+    }
+}
@@ -0,0 +1,105 @@
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * checks that leaving out branches shorter than a pixel draws exactly the same pixels as
+ * generating every level, for the generator and for the rule generator with a uniform ratio
+ * @author Gwen Tait
+ * @version 10-17-26
+ */
+class LevelOfDetailTest {
+    /**
+     * the number of random trees compared
+     */
+    private static final int TREES = 40;
+
+    /**
+     * compares random trees drawn with and without a level of detail of one pixel
+     */
+    @Test
+    void levelOfDetailDrawsSamePixels(){
+        Random random = new Random(11);
+        for (int t = 0; t < TREES; t++) {
+            int angle = random.nextInt(181);
+            Rectangle viewport = random.nextBoolean()
+                    ? new Rectangle(0, 0, Trees.WIDTH, Trees.HEIGHT) : null;
+            Trees.Tree tree = new Trees.Tree(random.nextInt(8, 17), random.nextInt(45, 80),
+                    random.nextBoolean() ? angle : random.nextInt(181), angle,
+                    random.nextInt(50, 300), random.nextInt(50), viewport, null, 0);
+            Trees.Tree pruned = new Trees.Tree(tree.depth(), tree.ratio(), tree.lChAngle(),
+                    tree.rChAngle(), tree.trunkLength(), tree.trunkWidth(), viewport, null, 1);
+            BranchBuffer all = tree.generate(new FractalGenerator()).getBranchBuffer();
+            BranchBuffer kept = pruned.generate(new FractalGenerator()).getBranchBuffer();
+            assertEquals(0, differingPixels(all, kept), tree::toString);
+        }
+    }
+
+    /**
+     * compares a rule-grown tree with a uniform ratio drawn with and without a level of detail
+     * of one pixel
+     */
+    @Test
+    void ruleLevelOfDetailDrawsSamePixels(){
+        for (int children = 2; children <= 4; children++) {
+            RuleSet rules = RuleSet.fromOptions(new FractalOptions(children == 2 ? 16 : 9, 45,
+                    40, 40, 250, 25, Color.BLUE, Color.GREEN), children);
+            BranchBuffer all = grow(rules, 0);
+            BranchBuffer kept = grow(rules, 1);
+            assertEquals(0, differingPixels(all, kept), children + " children");
+        }
+    }
+
+    /**
+     * grows a rule set on its own rule generator
+     * @param rules             the rules to grow
+     * @param levelOfDetail     the shortest branch grown, or 0 for every branch
+     * @return                  the grown branches
+     */
+    private static BranchBuffer grow(RuleSet rules, double levelOfDetail){
+        RuleGenerator generator = new RuleGenerator();
+        generator.setCanvas(Trees.WIDTH, Trees.HEIGHT);
+        generator.setBranchBudget(RuleGenerator.MAX_BRANCHES);
+        generator.setLevelOfDetail(levelOfDetail);
+        generator.setRules(rules);
+        return generator.getBranchBuffer();
+    }
+
+    /**
+     * draws two buffers branch by branch and counts the pixels that differ
+     * @param expected  the branches of the whole tree
+     * @param actual    the branches kept by the level of detail
+     * @return          the number of differing pixels
+     */
+    private static int differingPixels(BranchBuffer expected, BranchBuffer actual){
+        BufferedImage a = draw(expected);
+        BufferedImage b = draw(actual);
+        int differing = 0;
+        for (int y = 0; y < Trees.HEIGHT; y++) {
+            for (int x = 0; x < Trees.WIDTH; x++) {
+                if (a.getRGB(x, y) != b.getRGB(x, y)){
+                    differing++;
+                }
+            }
+        }
+        return differing;
+    }
+
+    /**
+     * draws the branches of a buffer in order into a new image
+     * @param branches  the branches to draw
+     * @return          the image
+     */
+    private static BufferedImage draw(BranchBuffer branches){
+        BufferedImage image = new BufferedImage(Trees.WIDTH, Trees.HEIGHT,
+                BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        branches.draw(g);
+        g.dispose();
+        return image;
+    }
+}
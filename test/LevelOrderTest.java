@@ -0,0 +1,47 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * checks that generating level by level gives exactly the same branches as generating
+ * recursively, with and without mirroring, viewport culling and level of detail
+ * @author Gwen Tait
+ * @version 10-17-26
+ */
+class LevelOrderTest {
+    /**
+     * the number of random trees compared
+     */
+    private static final int TREES = 2000;
+
+    /**
+     * compares level-order and recursive generation over random trees
+     */
+    @Test
+    void levelOrderMatchesRecursive(){
+        Random random = new Random(3);
+        for (int t = 0; t < TREES; t++) {
+            Trees.Tree tree = Trees.Tree.random(random, 16, random.nextInt(4) == 0);
+            boolean mirroring = random.nextBoolean();
+            FractalGenerator recursive = tree.generate(generator(false, mirroring));
+            FractalGenerator levelOrder = tree.generate(generator(true, mirroring));
+            Trees.assertSameBranches(recursive.getBranchBuffer(), levelOrder.getBranchBuffer(), tree);
+            assertEquals(recursive.getCulledCount(), levelOrder.getCulledCount(), tree::toString);
+        }
+    }
+
+    /**
+     * creates a generator which generates on the calling thread
+     * @param levelOrder    whether to generate level by level instead of recursively
+     * @param mirroring     whether to generate trees with equal angles in mirror image pairs
+     * @return              the generator
+     */
+    private static FractalGenerator generator(boolean levelOrder, boolean mirroring){
+        FractalGenerator generator = new FractalGenerator();
+        generator.setLevelOrder(levelOrder);
+        generator.setMirroring(mirroring);
+        return generator;
+    }
+}
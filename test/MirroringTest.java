@@ -0,0 +1,80 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * checks that generating trees with equal child angles in mirror image pairs gives exactly the
+ * same branches as generating every branch on its own. The mirrored paths truncate a branch's
+ * mirror image from the branch's own offsets, falling back to Math.cos and Math.sin near whole
+ * pixels, so every whole child angle is checked as well as random trees
+ * @author Gwen Tait
+ * @version 10-17-26
+ */
+class MirroringTest {
+    /**
+     * the ways of generating compared
+     */
+    private static final String[] MODES = {"levelOrder", "recursive", "parallel"};
+
+    /**
+     * the number of random trees compared
+     */
+    private static final int RANDOM_TREES = 400;
+
+    /**
+     * compares mirrored and unmirrored generation over every whole angle at several ratios and
+     * lengths
+     */
+    @Test
+    void everyAngleMatchesUnmirrored(){
+        for (int angle = 0; angle <= 180; angle++) {
+            for (int ratio = 45; ratio <= 80; ratio += 7) {
+                for (int length : new int[]{25, 137, 250}) {
+                    check(new Trees.Tree(12, ratio, angle, angle, length, 20, null, null, 0),
+                            MODES[(angle + ratio + length) % MODES.length]);
+                }
+            }
+        }
+    }
+
+    /**
+     * compares mirrored and unmirrored generation over random trees with viewports, zooms and
+     * levels of detail
+     */
+    @Test
+    void randomTreesMatchUnmirrored(){
+        Random random = new Random(7);
+        for (int t = 0; t < RANDOM_TREES; t++) {
+            check(Trees.Tree.random(random, 18, true), MODES[random.nextInt(MODES.length)]);
+        }
+    }
+
+    /**
+     * generates a tree mirrored and unmirrored and fails if they differ
+     * @param tree  the tree to compare
+     * @param mode  "levelOrder", "recursive" or "parallel"
+     */
+    private static void check(Trees.Tree tree, String mode){
+        FractalGenerator unmirrored = tree.generate(generator(mode, false));
+        FractalGenerator mirrored = tree.generate(generator(mode, true));
+        Trees.assertSameBranches(unmirrored.getBranchBuffer(), mirrored.getBranchBuffer(),
+                mode + " " + tree);
+        assertEquals(unmirrored.getCulledCount(), mirrored.getCulledCount(), tree::toString);
+    }
+
+    /**
+     * creates a generator which generates the passed way
+     * @param mode          "levelOrder", "recursive" or "parallel"
+     * @param mirroring     whether to generate trees with equal angles in mirror image pairs
+     * @return              the generator
+     */
+    private static FractalGenerator generator(String mode, boolean mirroring){
+        FractalGenerator generator = mode.equals("parallel") ? new FractalGenerator(3, 4)
+                : new FractalGenerator();
+        generator.setLevelOrder(mode.equals("levelOrder"));
+        generator.setMirroring(mirroring);
+        return generator;
+    }
+}
@@ -0,0 +1,100 @@
+import java.awt.*;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * helpers for the generator tests, which build the same tree in two ways and check that both
+ * give exactly the same branches
+ * @author Gwen Tait
+ * @version 10-17-26
+ */
+final class Trees {
+    /**
+     * the canvas the trees are generated for
+     */
+    static final int WIDTH = 1000, HEIGHT = 800;
+
+    /**
+     * not instantiable
+     */
+    private Trees(){
+    }
+
+    /**
+     * fails if two buffers differ in any branch
+     * @param expected  the branches generated the reference way
+     * @param actual    the branches generated the way being tested
+     * @param tree      a description of the tree for the failure message
+     */
+    static void assertSameBranches(BranchBuffer expected, BranchBuffer actual, Object tree){
+        int size = Math.min(expected.size(), actual.size());
+        for (int i = 0; i < size; i++) {
+            if (expected.x1[i] != actual.x1[i] || expected.y1[i] != actual.y1[i]
+                    || expected.x2[i] != actual.x2[i] || expected.y2[i] != actual.y2[i]
+                    || expected.width[i] != actual.width[i] || expected.color[i] != actual.color[i]
+                    || expected.level[i] != actual.level[i]){
+                fail("Branch " + i + " differs for " + tree);
+            }
+        }
+        if (expected.size() != actual.size()){
+            fail(expected.size() + " and " + actual.size() + " branches for " + tree);
+        }
+    }
+
+    /**
+     * record for one tree to generate, with the generator settings that shape it
+     * @param depth         the recursion depth
+     * @param ratio         the child to parent ratio, as a whole number
+     * @param lChAngle      the left child angle
+     * @param rChAngle      the right child angle
+     * @param trunkLength   the length of the trunk
+     * @param trunkWidth    the width of the trunk
+     * @param viewport      the viewport to cull to, or null for none
+     * @param view          the view to zoom to, or null for the whole canvas
+     * @param levelOfDetail the shortest branch generated, or 0 for every branch
+     */
+    record Tree(int depth, int ratio, int lChAngle, int rChAngle, int trunkLength, int trunkWidth,
+                Rectangle viewport, FractalView view, double levelOfDetail) {
+        /**
+         * picks a random tree, with a random viewport, zoom and level of detail
+         * @param random        the source of randomness
+         * @param maxDepth      the deepest tree to pick
+         * @param equalAngles   whether both child angles should be the same
+         * @return              the tree
+         */
+        static Tree random(Random random, int maxDepth, boolean equalAngles){
+            int angle = random.nextInt(181);
+            int view = random.nextInt(4);
+            return new Tree(random.nextInt(1, maxDepth + 1), random.nextInt(40, 80),
+                    equalAngles ? angle : random.nextInt(181), angle, random.nextInt(25, 350),
+                    random.nextInt(50),
+                    view == 0 ? null : view == 2 ? new Rectangle(100, 50, 500, 400)
+                            : new Rectangle(0, 0, WIDTH, HEIGHT),
+                    view == 3 ? new FractalView(2 + random.nextInt(4), random.nextInt(-200, 200),
+                            random.nextInt(-200, 200)) : null,
+                    random.nextBoolean() ? 2 : 0);
+        }
+
+        /**
+         * applies the tree's settings to a generator and generates it
+         * @param generator     the generator, configured for the way of generating being tested
+         * @return              the generator holding the tree
+         */
+        FractalGenerator generate(FractalGenerator generator){
+            generator.setCanvas(WIDTH, HEIGHT);
+            if (viewport != null){
+                generator.setViewport(viewport);
+            }
+            if (view != null){
+                generator.setView(view);
+            }
+            if (levelOfDetail > 0){
+                generator.setLevelOfDetail(levelOfDetail);
+            }
+            generator.setOptions(depth, ratio, lChAngle, rChAngle, trunkLength, trunkWidth,
+                    Color.BLUE, Color.GREEN);
+            return generator;
+        }
+    }
+}